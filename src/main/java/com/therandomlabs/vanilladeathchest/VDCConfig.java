@@ -24,10 +24,13 @@
 package com.therandomlabs.vanilladeathchest;
 
 import java.util.ArrayList;
+import java.util.IllegalFormatException;
 import java.util.List;
 import java.util.Optional;
 import java.util.Random;
 import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 import java.util.stream.Collectors;
 
 import com.electronwill.nightconfig.core.conversion.SpecDoubleInRange;
@@ -108,6 +111,27 @@ public final class VDCConfig implements ConfigData {
 		@ConfigEntry.Gui.Tooltip
 		public int locationSearchRadius = 8;
 
+		@TOMLConfigSerializer.Comment({
+				"The death chest placement location search mode.",
+				"NEAREST: All locations within the search radius are searched, nearest first.",
+				"HEIGHTMAP: Each column within the search radius is searched, nearest column " +
+						"first, but only within a few blocks of either the surface or the " +
+						"height of the player's death, whichever is lower. This checks far " +
+						"fewer locations, but locations further above or below may be missed."
+		})
+		@ConfigEntry.Gui.Tooltip
+		public LocationSearchMode locationSearchMode = LocationSearchMode.NEAREST;
+
+		@SpecIntInRange(min = 1, max = Integer.MAX_VALUE)
+		@TOMLConfigSerializer.Comment({
+				"The maximum number of candidate death chest placement locations that are " +
+						"checked per world tick.",
+				"Location searches that exceed this are continued on the next tick, which " +
+						"may delay the placement of death chests."
+		})
+		@ConfigEntry.Gui.Tooltip
+		public int locationSearchBudget = 4096;
+
 		@TOMLConfigSerializer.Comment(
 				"Causes a death chest to be forcibly placed at the location of a player's death " +
 						"if no suitable locations are found nearby."
@@ -153,6 +177,10 @@ public final class VDCConfig implements ConfigData {
 		@ConfigEntry.Gui.Excluded
 		private Set<Identifier> dimensionIdentifiers;
 
+		@Nullable
+		@ConfigEntry.Gui.Excluded
+		private Pattern registryNamePattern;
+
 		/**
 		 * {@inheritDoc}
 		 */
@@ -164,6 +192,24 @@ public final class VDCConfig implements ConfigData {
 			dimensions = dimensionIdentifiers.stream().
 					map(Identifier::toString).
 					collect(Collectors.toList());
+
+			try {
+				registryNamePattern = Pattern.compile(registryNameRegex);
+			} catch (PatternSyntaxException ex) {
+				VanillaDeathChest.logger.error("Invalid registry name regex", ex);
+				registryNameRegex = ".+";
+				registryNamePattern = Pattern.compile(registryNameRegex);
+			}
+		}
+
+		/**
+		 * Returns the compiled form of {@link #registryNameRegex}.
+		 *
+		 * @return a {@link Pattern}.
+		 */
+		@SuppressWarnings("NullAway")
+		public Pattern getRegistryNamePattern() {
+			return registryNamePattern;
 		}
 
 		/**
@@ -349,7 +395,7 @@ public final class VDCConfig implements ConfigData {
 		}
 	}
 
-	public static final class Protection {
+	public static final class Protection implements ConfigData {
 		@TOMLConfigSerializer.Comment({
 				"Enables death chest protection.",
 				"When a death chest is protected, it can only be unlocked by its owner."
@@ -378,6 +424,71 @@ public final class VDCConfig implements ConfigData {
 		})
 		@ConfigEntry.Gui.Tooltip
 		public int period = 120000;
+
+		@TOMLConfigSerializer.Comment({
+				"The message sent to a player when the protection of their death chest expires.",
+				"The X, Y and Z coordinates are provided as arguments.",
+				"Set this to an empty string to disable this message."
+		})
+		@ConfigEntry.Gui.Tooltip
+		public String expiryMessage = "";
+
+		@TOMLConfigSerializer.Comment(
+				"Causes death chests to be unlocked when their protection expires."
+		)
+		@ConfigEntry.Gui.Tooltip
+		public boolean unlockWhenExpired;
+
+		/**
+		 * {@inheritDoc}
+		 */
+		@Override
+		public void validatePostLoad() {
+			try {
+				String.format(expiryMessage, 0, 0, 0);
+			} catch (IllegalFormatException ex) {
+				VanillaDeathChest.logger.error("Invalid death chest expiry message", ex);
+				//Escape the message so that it is sent as is.
+				expiryMessage = expiryMessage.replace("%", "%%");
+			}
+		}
+	}
+
+	public static final class Expiry {
+		@SpecIntInRange(min = 0, max = Integer.MAX_VALUE)
+		@TOMLConfigSerializer.Comment({
+				"The number of ticks after which death chests expire and are removed.",
+				"Set this to 0 to cause death chests to never expire."
+		})
+		@ConfigEntry.Gui.Tooltip
+		public int period;
+
+		@TOMLConfigSerializer.Comment({
+				"Causes the expiry period to start when death chest protection expires rather " +
+						"than when the death chest is placed.",
+				"If death chests are protected indefinitely, they never expire."
+		})
+		@ConfigEntry.Gui.Tooltip
+		public boolean startAfterProtection;
+
+		@TOMLConfigSerializer.Comment({
+				"What happens to the contents of expired death chests.",
+				"DROP: The contents are dropped.",
+				"DELETE: The contents are deleted.",
+				"Either way, the death chest is archived like any other removed death chest, " +
+						"and can be placed again with its original contents using " +
+						"/vanilladeathchest place <identifier>."
+		})
+		@ConfigEntry.Gui.Tooltip
+		public ExpiredContentsBehavior contentsBehavior = ExpiredContentsBehavior.DROP;
+
+		@SpecIntInRange(min = 1, max = Integer.MAX_VALUE)
+		@TOMLConfigSerializer.Comment({
+				"The maximum number of expired death chests that are removed per world tick.",
+				"Any others are removed during the following ticks."
+		})
+		@ConfigEntry.Gui.Tooltip
+		public int maxRemovalsPerTick = 8;
 	}
 
 	public static final class Misc {
@@ -412,6 +523,30 @@ public final class VDCConfig implements ConfigData {
 		public String configReloadCommand = "vdcconfigreload";
 	}
 
+	public static final class Storage {
+		@TOMLConfigSerializer.Comment({
+				"The death chest storage mode.",
+				"SINGLE_FILE: All death chests are rewritten to a single file whenever they " +
+						"change.",
+				"JOURNALED: Changes are appended to a journal that is periodically compacted " +
+						"into a single file.",
+				"REGION_SHARDED: Death chests are split into files by region, and only the " +
+						"files for regions that have changed are rewritten.",
+				"Region files are only loaded when their regions are first needed."
+		})
+		@ConfigEntry.Gui.Tooltip
+		public StorageMode mode = StorageMode.SINGLE_FILE;
+
+		@SpecIntInRange(min = 1, max = Integer.MAX_VALUE)
+		@TOMLConfigSerializer.Comment({
+				"The number of journal records after which the journal is compacted into a " +
+						"single file.",
+				"This option only applies when the storage mode is JOURNALED."
+		})
+		@ConfigEntry.Gui.Tooltip
+		public int journalCompactionThreshold = 1024;
+	}
+
 	/**
 	 * The death chest container type.
 	 */
@@ -434,6 +569,20 @@ public final class VDCConfig implements ConfigData {
 		SINGLE_OR_DOUBLE_SHULKER_BOX
 	}
 
+	/**
+	 * Death chest placement location search modes.
+	 */
+	public enum LocationSearchMode {
+		/**
+		 * Search all locations within the search radius, nearest first.
+		 */
+		NEAREST,
+		/**
+		 * Only search the surface of each column within the search radius, nearest column first.
+		 */
+		HEIGHTMAP
+	}
+
 	/**
 	 * The shulker box color.
 	 */
@@ -540,6 +689,39 @@ public final class VDCConfig implements ConfigData {
 		WHITELIST
 	}
 
+	/**
+	 * Death chest storage modes.
+	 */
+	public enum StorageMode {
+		/**
+		 * All death chests are rewritten to a single file whenever they change.
+		 */
+		SINGLE_FILE,
+		/**
+		 * Changes are appended to a journal that is periodically compacted into a single file.
+		 */
+		JOURNALED,
+		/**
+		 * Death chests are split into files by region, and only the files for regions that have
+		 * changed are rewritten.
+		 */
+		REGION_SHARDED
+	}
+
+	/**
+	 * Expired death chest contents behaviors.
+	 */
+	public enum ExpiredContentsBehavior {
+		/**
+		 * Drop the contents.
+		 */
+		DROP,
+		/**
+		 * Delete the contents.
+		 */
+		DELETE
+	}
+
 	/**
 	 * Key item consumption behaviors.
 	 */
@@ -574,8 +756,18 @@ public final class VDCConfig implements ConfigData {
 	@ConfigEntry.Gui.TransitiveObject
 	public Protection protection = new Protection();
 
+	@TOMLConfigSerializer.Comment("Options related to death chest expiry.")
+	@ConfigEntry.Category("expiry")
+	@ConfigEntry.Gui.TransitiveObject
+	public Expiry expiry = new Expiry();
+
 	@TOMLConfigSerializer.Comment("Miscellaneous options.")
 	@ConfigEntry.Category("misc")
 	@ConfigEntry.Gui.TransitiveObject
 	public Misc misc = new Misc();
+
+	@TOMLConfigSerializer.Comment("Options related to death chest storage.")
+	@ConfigEntry.Category("storage")
+	@ConfigEntry.Gui.TransitiveObject
+	public Storage storage = new Storage();
 }
@@ -27,13 +27,18 @@ import com.therandomlabs.autoconfigtoml.TOMLConfigSerializer;
 import com.therandomlabs.vanilladeathchest.command.VDCCommand;
 import com.therandomlabs.vanilladeathchest.deathchest.DeathChestAutoRemover;
 import com.therandomlabs.vanilladeathchest.deathchest.DeathChestInteractions;
+import com.therandomlabs.vanilladeathchest.deathchest.DeathChestLifecycle;
 import com.therandomlabs.vanilladeathchest.deathchest.DeathChestPlacer;
+import com.therandomlabs.vanilladeathchest.world.DeathChestsIO;
 import com.therandomlabs.vanilladeathchest.world.DeathChestsState;
 import me.sargunvohra.mcmods.autoconfig1u.AutoConfig;
 import net.fabricmc.api.ModInitializer;
 import net.fabricmc.fabric.api.command.v1.CommandRegistrationCallback;
 import net.fabricmc.fabric.api.event.lifecycle.v1.ServerBlockEntityEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerChunkEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerLifecycleEvents;
 import net.fabricmc.fabric.api.event.lifecycle.v1.ServerTickEvents;
+import net.fabricmc.fabric.api.event.lifecycle.v1.ServerWorldEvents;
 import net.fabricmc.fabric.api.event.player.UseBlockCallback;
 import net.fabricmc.fabric.api.gamerule.v1.GameRuleFactory;
 import net.fabricmc.fabric.api.gamerule.v1.GameRuleRegistry;
@@ -86,8 +91,15 @@ public final class VanillaDeathChest implements ModInitializer {
 		CommandRegistrationCallback.EVENT.register(VDCCommand::register);
 		ServerTickEvents.START_WORLD_TICK.register(DeathChestPlacer::placeQueued);
 		ServerTickEvents.END_WORLD_TICK.register(DeathChestAutoRemover::removeEmpty);
+		ServerTickEvents.END_WORLD_TICK.register(DeathChestLifecycle::update);
 		UseBlockCallback.EVENT.register(DeathChestInteractions::interact);
 		ServerBlockEntityEvents.BLOCK_ENTITY_UNLOAD.register(DeathChestsState::onBlockEntityUnload);
+		ServerChunkEvents.CHUNK_LOAD.register(DeathChestsState::onChunkLoad);
+		ServerChunkEvents.CHUNK_UNLOAD.register(DeathChestsState::onChunkUnload);
+		ServerWorldEvents.LOAD.register(DeathChestsState::onWorldLoad);
+		ServerLifecycleEvents.SERVER_STARTED.register(DeathChestsState::onServerStarted);
+		ServerLifecycleEvents.SERVER_STOPPED.register(DeathChestsState::onServerStopped);
+		ServerLifecycleEvents.SERVER_STOPPED.register(DeathChestsIO::onServerStopped);
 	}
 
 	/**
@@ -25,6 +25,7 @@ package com.therandomlabs.vanilladeathchest.command;
 
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.Set;
 import java.util.UUID;
 
@@ -46,8 +47,10 @@ import net.minecraft.entity.player.PlayerInventory;
 import net.minecraft.server.command.CommandManager;
 import net.minecraft.server.command.ServerCommandSource;
 import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.server.world.ServerWorld;
 import net.minecraft.text.LiteralText;
 import net.minecraft.util.math.BlockPos;
+import org.checkerframework.checker.nullness.qual.Nullable;
 
 /**
  * The command that reloads the VanillaDeathChest configuration.
@@ -55,14 +58,15 @@ import net.minecraft.util.math.BlockPos;
 public final class VDCCommand {
 	private static final SuggestionProvider<ServerCommandSource> SUGGESTION_PROVIDER =
 			(context, builder) -> CommandSource.suggestMatching(
-					DeathChestsState.get(
-							context.getSource().getWorld()
-					).getDeathChestIdentifierStrings(), builder
+					getIdentifierSuggestions(context.getSource()), builder
 			);
 
 	private static final SimpleCommandExceptionType INVALID_IDENTIFIER_EXCEPTION =
 			new SimpleCommandExceptionType(new LiteralText("Invalid death chest identifier"));
 
+	private static final SimpleCommandExceptionType NO_DEATH_CHESTS_EXCEPTION =
+			new SimpleCommandExceptionType(new LiteralText("No death chests found"));
+
 	private VDCCommand() {}
 
 	/**
@@ -84,6 +88,28 @@ public final class VDCCommand {
 						).
 						then(CommandManager.literal("restoreinventory").
 								requires(source -> source.hasPermissionLevel(2)).
+								then(CommandManager.literal("latest").
+										executes(
+												context -> executeRestoreLatestInventory(
+														context.getSource(),
+														Collections.singleton(
+																context.getSource().getPlayer()
+														)
+												)
+										).
+										then(
+												CommandManager.argument(
+														"targets", EntityArgumentType.players()
+												).executes(
+														context -> executeRestoreLatestInventory(
+																context.getSource(),
+																EntityArgumentType.getPlayers(
+																		context, "targets"
+																)
+														)
+												)
+										)
+								).
 								then(
 										CommandManager.argument(
 												"identifier", UuidArgumentType.uuid()
@@ -117,6 +143,21 @@ public final class VDCCommand {
 												)
 										)
 								)
+						).
+						then(CommandManager.literal("list").
+								requires(source -> source.hasPermissionLevel(2)).
+								then(
+										CommandManager.argument(
+												"targets", EntityArgumentType.players()
+										).executes(
+												context -> executeList(
+														context.getSource(),
+														EntityArgumentType.getPlayers(
+																context, "targets"
+														)
+												)
+										)
+								)
 						)
 		);
 		dispatcher.register(CommandManager.literal("vdc").redirect(commandNode));
@@ -124,6 +165,7 @@ public final class VDCCommand {
 
 	private static int executeReloadConfig(ServerCommandSource source) {
 		VanillaDeathChest.reloadConfig();
+		DeathChestsState.onConfigReload(source.getMinecraftServer());
 		source.sendFeedback(new LiteralText("VanillaDeathChest configuration reloaded!"), true);
 		return Command.SINGLE_SUCCESS;
 	}
@@ -140,20 +182,101 @@ public final class VDCCommand {
 			Collection<ServerPlayerEntity> players
 	) throws CommandSyntaxException {
 		for (ServerPlayerEntity player : players) {
-			final PlayerInventory inventory = player.inventory;
+			restoreInventory(player, deathChest);
+		}
 
-			for (int i = 0; i < inventory.size(); i++) {
-				inventory.setStack(i, deathChest.getInventory().getStack(i).copy());
+		source.sendFeedback(new LiteralText("Inventory restored!"), true);
+		return Command.SINGLE_SUCCESS;
+	}
+
+	private static int executeRestoreLatestInventory(
+			ServerCommandSource source, Collection<ServerPlayerEntity> players
+	) throws CommandSyntaxException {
+		int restored = 0;
+
+		for (ServerPlayerEntity player : players) {
+			final DeathChest deathChest = getLatestDeathChest(source, player.getUuid());
+
+			if (deathChest != null) {
+				restoreInventory(player, deathChest);
+				restored++;
 			}
 		}
 
+		if (restored == 0) {
+			throw NO_DEATH_CHESTS_EXCEPTION.create();
+		}
+
 		source.sendFeedback(new LiteralText("Inventory restored!"), true);
-		return Command.SINGLE_SUCCESS;
+		return restored;
+	}
+
+	private static int executeList(
+			ServerCommandSource source, Collection<ServerPlayerEntity> players
+	) {
+		for (ServerPlayerEntity player : players) {
+			int count = 0;
+
+			for (ServerWorld world : source.getMinecraftServer().getWorlds()) {
+				count += DeathChestsState.get(world).getDeathChestCount(player.getUuid());
+			}
+
+			source.sendFeedback(new LiteralText(String.format(
+					"%s has %s death chests", player.getGameProfile().getName(), count
+			)), false);
+
+			for (ServerWorld world : source.getMinecraftServer().getWorlds()) {
+				for (DeathChest deathChest :
+						DeathChestsState.get(world).getDeathChests(player.getUuid())) {
+					final BlockPos pos = deathChest.getPos();
+					source.sendFeedback(new LiteralText(String.format(
+							"%s at [%s, %s, %s] in %s", deathChest.getIdentifier(),
+							pos.getX(), pos.getY(), pos.getZ(),
+							world.getRegistryKey().getValue()
+					)), false);
+				}
+
+				for (UUID identifier : DeathChestsState.get(world).
+						getArchivedDeathChestIdentifiers(player.getUuid())) {
+					source.sendFeedback(new LiteralText(String.format(
+							"%s (archived) in %s", identifier, world.getRegistryKey().getValue()
+					)), false);
+				}
+			}
+		}
+
+		return players.size();
+	}
+
+	private static void restoreInventory(ServerPlayerEntity player, DeathChest deathChest) {
+		final PlayerInventory inventory = player.inventory;
+
+		for (int i = 0; i < inventory.size(); i++) {
+			inventory.setStack(i, deathChest.getInventory().getStack(i).copy());
+		}
+	}
+
+	//Death chests are stored per world, so the latest one in any world is returned.
+	@Nullable
+	private static DeathChest getLatestDeathChest(ServerCommandSource source, UUID playerUUID) {
+		DeathChest latest = null;
+
+		for (ServerWorld world : source.getMinecraftServer().getWorlds()) {
+			final DeathChest deathChest =
+					DeathChestsState.get(world).getLatestDeathChest(playerUUID);
+
+			if (deathChest != null &&
+					(latest == null || deathChest.getCreationTime() > latest.getCreationTime())) {
+				latest = deathChest;
+			}
+		}
+
+		return latest;
 	}
 
 	private static int executePlace(ServerCommandSource source, DeathChest deathChest) {
 		DeathChestPlacer.placeAndFillContainer(deathChest);
-		DeathChestsState.get(source.getWorld()).addDeathChest(deathChest);
+		DeathChestsState.get(source.getWorld()).restoreDeathChest(deathChest);
 		final BlockPos pos = deathChest.getPos();
 		source.sendFeedback(new LiteralText(String.format(
 				"Death chest placed at [%s, %s, %s]", pos.getX(), pos.getY(), pos.getZ()
@@ -161,15 +284,26 @@ public final class VDCCommand {
 		return Command.SINGLE_SUCCESS;
 	}
 
-	@SuppressWarnings("NullAway")
+	//Archived death chests can also be restored or placed again, so they are suggested too.
+	private static Set<String> getIdentifierSuggestions(ServerCommandSource source) {
+		final DeathChestsState state = DeathChestsState.get(source.getWorld());
+		final Set<String> identifiers = new HashSet<>(state.getDeathChestIdentifierStrings());
+
+		for (UUID identifier : state.getArchivedDeathChestIdentifiers()) {
+			identifiers.add(identifier.toString());
+		}
+
+		return identifiers;
+	}
+
 	private static DeathChest getDeathChest(CommandContext<ServerCommandSource> context)
 			throws CommandSyntaxException {
-		final DeathChestsState state = DeathChestsState.get(context.getSource().getWorld());
-		final Set<UUID> identifiers = state.getDeathChestIdentifiers();
-		final UUID identifier = context.getArgument("identifier", UUID.class);
+		//Archived death chests can still be restored or placed again.
+		final DeathChest deathChest = DeathChestsState.get(context.getSource().getWorld()).
+				findDeathChest(context.getArgument("identifier", UUID.class));
 
-		if (identifiers.contains(identifier)) {
-			return state.getDeathChest(identifier);
+		if (deathChest != null) {
+			return deathChest;
 		}
 
 		throw INVALID_IDENTIFIER_EXCEPTION.create();
@@ -23,6 +23,12 @@
 
 package com.therandomlabs.vanilladeathchest.deathchest;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
@@ -33,28 +39,53 @@ import com.therandomlabs.vanilladeathchest.util.DeathChestBlockEntity;
 import com.therandomlabs.vanilladeathchest.world.DeathChestsState;
 import net.fabricmc.fabric.api.util.NbtType;
 import net.minecraft.block.entity.BlockEntity;
-import net.minecraft.entity.EntityType;
-import net.minecraft.entity.ItemEntity;
 import net.minecraft.entity.player.PlayerEntity;
 import net.minecraft.entity.player.PlayerInventory;
 import net.minecraft.nbt.CompoundTag;
 import net.minecraft.nbt.ListTag;
 import net.minecraft.nbt.NbtHelper;
+import net.minecraft.nbt.NbtIo;
 import net.minecraft.nbt.Tag;
 import net.minecraft.server.OperatorEntry;
 import net.minecraft.server.world.ServerWorld;
 import net.minecraft.util.math.BlockPos;
+import org.checkerframework.checker.nullness.qual.Nullable;
 
 /**
  * Represents a death chest.
  */
 public final class DeathChest {
+	//Binary records start with the identifier, player UUID, creation time, position and flags,
+	//followed by the items and inventory as an uncompressed NBT compound.
+	private static final int RECORD_FLAGS_OFFSET = Long.BYTES * 6;
+	private static final int RECORD_PAYLOAD_OFFSET = RECORD_FLAGS_OFFSET + 1;
+	private static final byte DOUBLE_CHEST_FLAG = 1;
+	private static final byte LOCKED_FLAG = 2;
+
 	private final UUID identifier;
 	private final ServerWorld world;
 	private final UUID playerUUID;
 	@SuppressWarnings("PMD.LooseCoupling")
-	private final ArrayList<ItemEntity> items;
-	private final PlayerInventory inventory;
+	@Nullable
+	private ArrayList<DeathChestItem> items;
+	@Nullable
+	private DeathChestInventory inventory;
+	//Whether the decoded items have been handed out by getItems, in which case they may be
+	//modified at any time, so they are never released and snapshots of them are never cached.
+	private boolean itemsExposed;
+	//The serialized items and inventory are kept until they are needed so that loading death
+	//chests that are never touched again is cheap.
+	@Nullable
+	private ListTag itemsTag;
+	@Nullable
+	private ListTag inventoryTag;
+	//Saves may read this on another thread, so it must never be modified once created.
+	@Nullable
+	private CompoundTag snapshotTag;
+	//The binary record this death chest was read from, which is kept so that it can be written
+	//back without being encoded again. It is replaced rather than modified when this death chest
+	//changes, as saves may be reading it on another thread.
+	private byte @Nullable [] record;
 	private final long creationTime;
 	private final BlockPos pos;
 	private final boolean isDoubleChest;
@@ -74,8 +105,8 @@ public final class DeathChest {
 	 * @param locked whether the chest is locked.
 	 */
 	public DeathChest(
-			UUID identifier, ServerWorld world, UUID playerUUID, List<ItemEntity> items,
-			PlayerInventory inventory, long creationTime, BlockPos pos, boolean isDoubleChest,
+			UUID identifier, ServerWorld world, UUID playerUUID, List<DeathChestItem> items,
+			DeathChestInventory inventory, long creationTime, BlockPos pos, boolean isDoubleChest,
 			boolean locked
 	) {
 		this.identifier = identifier;
@@ -89,6 +120,36 @@ public final class DeathChest {
 		this.locked = locked;
 	}
 
+	private DeathChest(
+			UUID identifier, ServerWorld world, UUID playerUUID, ListTag itemsTag,
+			ListTag inventoryTag, long creationTime, BlockPos pos, boolean isDoubleChest,
+			boolean locked
+	) {
+		this.identifier = identifier;
+		this.world = world;
+		this.playerUUID = playerUUID;
+		this.itemsTag = itemsTag;
+		this.inventoryTag = inventoryTag;
+		this.creationTime = creationTime;
+		this.pos = pos;
+		this.isDoubleChest = isDoubleChest;
+		this.locked = locked;
+	}
+
+	private DeathChest(
+			UUID identifier, ServerWorld world, UUID playerUUID, byte[] record, long creationTime,
+			BlockPos pos, boolean isDoubleChest, boolean locked
+	) {
+		this.identifier = identifier;
+		this.world = world;
+		this.playerUUID = playerUUID;
+		this.record = record;
+		this.creationTime = creationTime;
+		this.pos = pos;
+		this.isDoubleChest = isDoubleChest;
+		this.locked = locked;
+	}
+
 	/**
 	 * Returns this death chest's identifier.
 	 *
@@ -118,10 +179,14 @@ public final class DeathChest {
 
 	/**
 	 * Returns a mutable list containing this death chest's items.
+	 * The list remains this death chest's own for as long as this death chest exists.
 	 *
 	 * @return a mutable list containing this death chest's items.
 	 */
-	public List<ItemEntity> getItems() {
+	@SuppressWarnings("NullAway")
+	public List<DeathChestItem> getItems() {
+		decode();
+		itemsExposed = true;
 		return items;
 	}
 
@@ -130,17 +195,20 @@ public final class DeathChest {
 	 *
 	 * @return a cloned mutable list containing this death chest's items.
 	 */
-	@SuppressWarnings("unchecked")
-	public List<ItemEntity> cloneItems() {
-		return (List<ItemEntity>) items.clone();
+	@SuppressWarnings({"unchecked", "NullAway"})
+	public List<DeathChestItem> cloneItems() {
+		decode();
+		return (List<DeathChestItem>) items.clone();
 	}
 
 	/**
 	 * Returns the player inventory at the time of death.
 	 *
-	 * @return the {@link PlayerInventory} at the time of death.
+	 * @return a {@link DeathChestInventory} containing the player inventory at the time of death.
 	 */
-	public PlayerInventory getInventory() {
+	@SuppressWarnings("NullAway")
+	public DeathChestInventory getInventory() {
+		decode();
 		return inventory;
 	}
 
@@ -189,8 +257,33 @@ public final class DeathChest {
 	 * or {@code false} if this death chest should be unlocked.
 	 */
 	public void setLocked(boolean flag) {
+		if (locked != flag) {
+			restoreLocked(flag);
+			DeathChestsState.get(world).onLockChanged(this);
+		}
+	}
+
+	/**
+	 * Sets whether this death chest is locked without notifying the {@link DeathChestsState}.
+	 * This should only be used when a previous change is being restored, e.g. when a journal is
+	 * replayed while the state is still being loaded.
+	 *
+	 * @param flag {@code true} if this death chest should be locked,
+	 * or {@code false} if this death chest should be unlocked.
+	 */
+	public void restoreLocked(boolean flag) {
+		if (locked == flag) {
+			return;
+		}
+
 		locked = flag;
-		DeathChestsState.get(world).markDirty();
+		snapshotTag = null;
+
+		if (record != null) {
+			final byte[] newRecord = record.clone();
+			newRecord[RECORD_FLAGS_OFFSET] = getRecordFlags(isDoubleChest, flag);
+			record = newRecord;
+		}
 	}
 
 	/**
@@ -248,19 +341,19 @@ public final class DeathChest {
 		tag.put("Identifier", NbtHelper.fromUuid(identifier));
 		tag.put("PlayerUUID", NbtHelper.fromUuid(playerUUID));
 
-		final ListTag itemsList = new ListTag();
-
-		for (ItemEntity item : items) {
-			final CompoundTag itemTag = item.toTag(new CompoundTag());
-			item.writeCustomDataToTag(itemTag);
-			itemsList.add(itemTag);
+		if (items == null && itemsTag == null) {
+			final CompoundTag payload = readPayload();
+			itemsTag = payload.getList("Items", NbtType.COMPOUND);
+			inventoryTag = payload.getList("InventorySlots", NbtType.COMPOUND);
 		}
 
-		tag.put("Items", itemsList);
-
-		final ListTag inventoryList = new ListTag();
-		inventory.serialize(inventoryList);
-		tag.put("Inventory", inventoryList);
+		if (itemsTag != null && inventoryTag != null) {
+			tag.put("Items", itemsTag);
+			tag.put("InventorySlots", inventoryTag);
+		} else if (items != null && inventory != null) {
+			tag.put("Items", encodeItems(items));
+			tag.put("InventorySlots", inventory.toTag(items));
+		}
 
 		tag.putLong("CreationTime", creationTime);
 		tag.put("Pos", NbtHelper.fromBlockPos(pos));
@@ -269,8 +362,173 @@ public final class DeathChest {
 		return tag;
 	}
 
+	/**
+	 * Returns a serialized snapshot of this death chest that must not be modified.
+	 * The snapshot is cached until this death chest changes, so this is cheap to call repeatedly.
+	 * If the items have been decoded but never returned by {@link #getItems()}, they are
+	 * serialized and released. Otherwise, they may be modified at any time, so a new snapshot
+	 * is taken every time.
+	 *
+	 * @return a {@link CompoundTag}.
+	 */
+	@SuppressWarnings("NullAway")
+	public CompoundTag toSnapshotTag() {
+		if (itemsExposed) {
+			return toTag(new CompoundTag());
+		}
+
+		if (snapshotTag == null) {
+			if (items != null && inventory != null) {
+				itemsTag = encodeItems(items);
+				inventoryTag = inventory.toTag(items);
+				items = null;
+				inventory = null;
+			}
+
+			snapshotTag = toTag(new CompoundTag());
+		}
+
+		return snapshotTag;
+	}
+
+	/**
+	 * Returns the binary record that this death chest was read from if it has not changed since.
+	 * The returned array must not be modified.
+	 *
+	 * @return the binary record, or {@code null} if it is not available.
+	 * @see #toRecord(CompoundTag)
+	 */
+	@SuppressWarnings("PMD.MethodReturnsInternalArray")
+	public byte @Nullable [] getRecord() {
+		return record;
+	}
+
+	@SuppressWarnings({"ConstantConditions", "NullAway"})
+	private void decode() {
+		if (items != null) {
+			return;
+		}
+
+		final ListTag itemsList;
+		final ListTag inventoryList;
+
+		if (itemsTag != null) {
+			//ItemStack#fromTag shares NBT with the tag it is read from, so a copy is decoded to
+			//keep the serialized items, which may be in a snapshot that is being saved, unchanged.
+			itemsList = itemsTag.copy();
+			inventoryList = inventoryTag.copy();
+		} else {
+			final CompoundTag payload = readPayload();
+			itemsList = payload.getList("Items", NbtType.COMPOUND);
+			inventoryList = payload.getList("InventorySlots", NbtType.COMPOUND);
+		}
+
+		items = new ArrayList<>(itemsList.size());
+
+		for (Tag itemTag : itemsList) {
+			items.add(DeathChestItem.fromTag((CompoundTag) itemTag));
+		}
+
+		inventory = DeathChestInventory.fromTag(inventoryList, items);
+
+		//The decoded items may be modified, so the serialized items are now stale.
+		itemsTag = null;
+		inventoryTag = null;
+		snapshotTag = null;
+		record = null;
+	}
+
+	@SuppressWarnings("NullAway")
+	private CompoundTag readPayload() {
+		try {
+			return NbtIo.read(new DataInputStream(new ByteArrayInputStream(
+					record, RECORD_PAYLOAD_OFFSET, record.length - RECORD_PAYLOAD_OFFSET
+			)));
+		} catch (IOException ex) {
+			throw new IllegalStateException("Invalid death chest record: " + identifier, ex);
+		}
+	}
+
+	private static ListTag encodeItems(List<DeathChestItem> items) {
+		final ListTag itemsList = new ListTag();
+
+		for (DeathChestItem item : items) {
+			itemsList.add(item.toTag(new CompoundTag()));
+		}
+
+		return itemsList;
+	}
+
+	/**
+	 * Encodes a death chest snapshot as a binary record.
+	 * As snapshots are immutable, this may be called on any thread.
+	 *
+	 * @param tag a snapshot returned by {@link #toSnapshotTag()}.
+	 * @return the binary record.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	@SuppressWarnings("NullAway")
+	public static byte[] toRecord(CompoundTag tag) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final DataOutputStream stream = new DataOutputStream(bytes);
+		final UUID identifier = NbtHelper.toUuid(tag.get("Identifier"));
+		final UUID playerUUID = NbtHelper.toUuid(tag.get("PlayerUUID"));
+		stream.writeLong(identifier.getMostSignificantBits());
+		stream.writeLong(identifier.getLeastSignificantBits());
+		stream.writeLong(playerUUID.getMostSignificantBits());
+		stream.writeLong(playerUUID.getLeastSignificantBits());
+		stream.writeLong(tag.getLong("CreationTime"));
+		stream.writeLong(NbtHelper.toBlockPos(tag.getCompound("Pos")).asLong());
+		stream.writeByte(
+				getRecordFlags(tag.getBoolean("IsDoubleChest"), tag.getBoolean("Locked"))
+		);
+
+		final CompoundTag payload = new CompoundTag();
+		payload.put("Items", tag.get("Items"));
+		payload.put("InventorySlots", tag.get("InventorySlots"));
+		NbtIo.write(payload, stream);
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Reads a death chest from a binary record.
+	 * Only the fixed-size header is read; the items and inventory are not decoded until they
+	 * are first accessed.
+	 *
+	 * @param world a {@link ServerWorld}.
+	 * @param record a binary record that is not modified afterwards.
+	 * @return the {@link DeathChest}.
+	 */
+	public static DeathChest fromRecord(ServerWorld world, byte[] record) {
+		final ByteBuffer buffer = ByteBuffer.wrap(record);
+		final UUID identifier = new UUID(buffer.getLong(), buffer.getLong());
+		final UUID playerUUID = new UUID(buffer.getLong(), buffer.getLong());
+		final long creationTime = buffer.getLong();
+		final BlockPos pos = BlockPos.fromLong(buffer.getLong());
+		final byte flags = buffer.get();
+		return new DeathChest(
+				identifier, world, playerUUID, record, creationTime, pos,
+				(flags & DOUBLE_CHEST_FLAG) != 0, (flags & LOCKED_FLAG) != 0
+		);
+	}
+
+	private static byte getRecordFlags(boolean isDoubleChest, boolean locked) {
+		byte flags = 0;
+
+		if (isDoubleChest) {
+			flags |= DOUBLE_CHEST_FLAG;
+		}
+
+		if (locked) {
+			flags |= LOCKED_FLAG;
+		}
+
+		return flags;
+	}
+
 	/**
 	 * Deserializes a death chest from a {@link CompoundTag}.
+	 * The items and inventory are not decoded until they are first accessed.
 	 *
 	 * @param world a {@link ServerWorld}.
 	 * @param tag a {@link CompoundTag}.
@@ -278,24 +536,33 @@ public final class DeathChest {
 	 */
 	@SuppressWarnings("ConstantConditions")
 	public static DeathChest fromTag(ServerWorld world, CompoundTag tag) {
-		final List<ItemEntity> items = new ArrayList<>();
-
-		for (Tag itemTag : tag.getList("Items", NbtType.COMPOUND)) {
-			final ItemEntity item = new ItemEntity(EntityType.ITEM, world);
-			item.fromTag((CompoundTag) itemTag);
-			item.readCustomDataFromTag((CompoundTag) itemTag);
-			items.add(item);
+		if (!tag.contains("InventorySlots")) {
+			//Older versions store a full copy of the inventory, so we convert it immediately.
+			final List<DeathChestItem> items = new ArrayList<>();
+
+			for (Tag itemTag : tag.getList("Items", NbtType.COMPOUND)) {
+				items.add(DeathChestItem.fromTag((CompoundTag) itemTag));
+			}
+
+			//We can pass in a null player here because deserialize doesn't use the player.
+			final PlayerInventory inventory = new PlayerInventory(null);
+			inventory.deserialize(tag.getList("Inventory", NbtType.COMPOUND));
+
+			return new DeathChest(
+					NbtHelper.toUuid(tag.get("Identifier")), world,
+					NbtHelper.toUuid(tag.get("PlayerUUID")), items,
+					DeathChestInventory.of(inventory), tag.getLong("CreationTime"),
+					NbtHelper.toBlockPos(tag.getCompound("Pos")), tag.getBoolean("IsDoubleChest"),
+					tag.getBoolean("Locked")
+			);
 		}
 
-		//We can pass in a null player here because deserialize doesn't use the player.
-		final PlayerInventory inventory = new PlayerInventory(null);
-		inventory.deserialize(tag.getList("Inventory", NbtType.COMPOUND));
-
 		return new DeathChest(
 				NbtHelper.toUuid(tag.get("Identifier")), world,
-				NbtHelper.toUuid(tag.get("PlayerUUID")), items, inventory,
-				tag.getLong("CreationTime"), NbtHelper.toBlockPos(tag.getCompound("Pos")),
-				tag.getBoolean("IsDoubleChest"), tag.getBoolean("Locked")
+				NbtHelper.toUuid(tag.get("PlayerUUID")), tag.getList("Items", NbtType.COMPOUND),
+				tag.getList("InventorySlots", NbtType.COMPOUND), tag.getLong("CreationTime"),
+				NbtHelper.toBlockPos(tag.getCompound("Pos")), tag.getBoolean("IsDoubleChest"),
+				tag.getBoolean("Locked")
 		);
 	}
 }
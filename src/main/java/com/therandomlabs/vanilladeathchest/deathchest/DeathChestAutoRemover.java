@@ -23,7 +23,10 @@
 
 package com.therandomlabs.vanilladeathchest.deathchest;
 
+import java.util.List;
+
 import com.therandomlabs.vanilladeathchest.VanillaDeathChest;
+import com.therandomlabs.vanilladeathchest.util.NonEmptySlotCount;
 import com.therandomlabs.vanilladeathchest.util.ViewerCount;
 import com.therandomlabs.vanilladeathchest.world.DeathChestsState;
 import net.minecraft.block.Blocks;
@@ -31,6 +34,7 @@ import net.minecraft.block.entity.BlockEntity;
 import net.minecraft.block.entity.LockableContainerBlockEntity;
 import net.minecraft.server.world.ServerWorld;
 import net.minecraft.util.math.BlockPos;
+import org.checkerframework.checker.nullness.qual.Nullable;
 
 /**
  * Handles the automatic removal of empty death chests.
@@ -41,6 +45,8 @@ public final class DeathChestAutoRemover {
 	/**
 	 * Removes all empty death chests in loaded chunks.
 	 * This is called at the end of every world tick.
+	 * Only death chests whose contents have changed or whose chunks have been loaded since the
+	 * last call are checked.
 	 *
 	 * @param world a {@link ServerWorld}.
 	 */
@@ -49,23 +55,31 @@ public final class DeathChestAutoRemover {
 			return;
 		}
 
-		DeathChestsState.get(world).getExistingDeathChests().
-				forEach(DeathChestAutoRemover::removeIfEmpty);
+		final DeathChestsState state = DeathChestsState.get(world);
+		final List<DeathChest> deathChests = state.pollChangedDeathChests();
+
+		for (DeathChest deathChest : deathChests) {
+			//Death chests may have been removed by earlier iterations.
+			if (state.getLoadedDeathChests().contains(deathChest)) {
+				removeIfEmpty(state, deathChest);
+			}
+		}
 	}
 
-	private static void removeIfEmpty(DeathChest deathChest) {
+	private static void removeIfEmpty(DeathChestsState state, DeathChest deathChest) {
 		final ServerWorld world = deathChest.getWorld();
 		final BlockPos pos = deathChest.getPos();
 
+		//The west half is known to be loaded, but the east half may be in a different chunk.
 		//Don't unnecessarily load any chunks.
-		if (!world.getChunkManager().isChunkLoaded(pos.getX() >> 4, pos.getZ() >> 4)) {
+		if (deathChest.isDoubleChest() &&
+				!state.isChunkLoaded((pos.getX() + 1) >> 4, pos.getZ() >> 4)) {
 			return;
 		}
 
 		final BlockEntity blockEntity = world.getBlockEntity(pos);
 
-		if (!(blockEntity instanceof LockableContainerBlockEntity) ||
-				!((LockableContainerBlockEntity) blockEntity).isEmpty()) {
+		if (!isEmpty(blockEntity)) {
 			return;
 		}
 
@@ -74,8 +88,7 @@ public final class DeathChestAutoRemover {
 		if (isDoubleChest) {
 			final BlockEntity eastBlockEntity = world.getBlockEntity(pos.east());
 
-			if (!(eastBlockEntity instanceof LockableContainerBlockEntity) ||
-					!((LockableContainerBlockEntity) eastBlockEntity).isEmpty()) {
+			if (!isEmpty(eastBlockEntity)) {
 				return;
 			}
 		}
@@ -90,4 +103,13 @@ public final class DeathChestAutoRemover {
 			}
 		}
 	}
+
+	private static boolean isEmpty(@Nullable BlockEntity blockEntity) {
+		if (blockEntity instanceof NonEmptySlotCount) {
+			return ((NonEmptySlotCount) blockEntity).getNonEmptySlotCount() == 0;
+		}
+
+		return blockEntity instanceof LockableContainerBlockEntity &&
+				((LockableContainerBlockEntity) blockEntity).isEmpty();
+	}
 }
@@ -0,0 +1,151 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2021 TheRandomLabs
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.therandomlabs.vanilladeathchest.deathchest;
+
+import java.util.List;
+
+import it.unimi.dsi.fastutil.ints.Int2ObjectMap;
+import it.unimi.dsi.fastutil.ints.Int2ObjectOpenHashMap;
+import net.minecraft.entity.player.PlayerInventory;
+import net.minecraft.item.ItemStack;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.Tag;
+
+/**
+ * A sparse snapshot of a player's inventory at the time of death.
+ * Only non-empty slots are stored. When serialized, stacks that are identical to one of the
+ * death chest's items refer to that item rather than being serialized again.
+ */
+public final class DeathChestInventory {
+	private final Int2ObjectMap<ItemStack> stacks = new Int2ObjectOpenHashMap<>();
+
+	private DeathChestInventory() {
+		stacks.defaultReturnValue(ItemStack.EMPTY);
+	}
+
+	/**
+	 * Returns the stack in the specified slot. The returned stack should not be modified.
+	 *
+	 * @param slot a slot index as used by {@link PlayerInventory#getStack(int)}.
+	 * @return the {@link ItemStack} in the specified slot, or {@link ItemStack#EMPTY} if the slot
+	 * is empty.
+	 */
+	public ItemStack getStack(int slot) {
+		return stacks.get(slot);
+	}
+
+	/**
+	 * Serializes this inventory to a {@link ListTag}.
+	 *
+	 * @param items the death chest items that stacks may refer to.
+	 * @return the {@link ListTag}.
+	 */
+	public ListTag toTag(List<DeathChestItem> items) {
+		final ListTag list = new ListTag();
+
+		for (Int2ObjectMap.Entry<ItemStack> entry : stacks.int2ObjectEntrySet()) {
+			final ItemStack stack = entry.getValue();
+			final CompoundTag tag = new CompoundTag();
+			tag.putInt("Slot", entry.getIntKey());
+
+			final int index = indexOf(items, stack);
+
+			if (index == -1) {
+				tag.put("Stack", stack.toTag(new CompoundTag()));
+			} else {
+				tag.putInt("ItemIndex", index);
+			}
+
+			list.add(tag);
+		}
+
+		return list;
+	}
+
+	private static int indexOf(List<DeathChestItem> items, ItemStack stack) {
+		for (int i = 0; i < items.size(); i++) {
+			if (ItemStack.areEqual(items.get(i).getStack(), stack)) {
+				return i;
+			}
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Creates a snapshot of the specified player inventory.
+	 *
+	 * @param inventory a {@link PlayerInventory}.
+	 * @return a {@link DeathChestInventory} containing copies of the non-empty stacks in the
+	 * specified inventory.
+	 */
+	public static DeathChestInventory of(PlayerInventory inventory) {
+		final DeathChestInventory snapshot = new DeathChestInventory();
+
+		for (int i = 0; i < inventory.size(); i++) {
+			final ItemStack stack = inventory.getStack(i);
+
+			if (!stack.isEmpty()) {
+				snapshot.stacks.put(i, stack.copy());
+			}
+		}
+
+		return snapshot;
+	}
+
+	/**
+	 * Deserializes an inventory from a {@link ListTag}.
+	 *
+	 * @param list a {@link ListTag}.
+	 * @param items the death chest items that stacks may refer to.
+	 * @return the deserialized {@link DeathChestInventory}.
+	 */
+	public static DeathChestInventory fromTag(ListTag list, List<DeathChestItem> items) {
+		final DeathChestInventory inventory = new DeathChestInventory();
+
+		for (Tag element : list) {
+			final CompoundTag tag = (CompoundTag) element;
+			final ItemStack stack;
+
+			if (tag.contains("ItemIndex")) {
+				final int index = tag.getInt("ItemIndex");
+
+				if (index < 0 || index >= items.size()) {
+					continue;
+				}
+
+				stack = items.get(index).getStack().copy();
+			} else {
+				stack = ItemStack.fromTag(tag.getCompound("Stack"));
+			}
+
+			if (!stack.isEmpty()) {
+				inventory.stacks.put(tag.getInt("Slot"), stack);
+			}
+		}
+
+		return inventory;
+	}
+}
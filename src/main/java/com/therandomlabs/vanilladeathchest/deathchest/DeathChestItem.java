@@ -0,0 +1,159 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2021 TheRandomLabs
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.therandomlabs.vanilladeathchest.deathchest;
+
+import net.fabricmc.fabric.api.util.NbtType;
+import net.minecraft.entity.ItemEntity;
+import net.minecraft.item.ItemStack;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.DoubleTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.world.World;
+
+/**
+ * Represents an item in a death chest.
+ * Unlike an {@link ItemEntity}, this only stores the item stack and the position at which it was
+ * dropped.
+ */
+public final class DeathChestItem {
+	private final ItemStack stack;
+	private final double x;
+	private final double y;
+	private final double z;
+
+	/**
+	 * Constructs a {@link DeathChestItem} with the specified properties.
+	 *
+	 * @param stack an {@link ItemStack}.
+	 * @param x the X coordinate of the position at which the item was dropped.
+	 * @param y the Y coordinate of the position at which the item was dropped.
+	 * @param z the Z coordinate of the position at which the item was dropped.
+	 */
+	public DeathChestItem(ItemStack stack, double x, double y, double z) {
+		this.stack = stack;
+		this.x = x;
+		this.y = y;
+		this.z = z;
+	}
+
+	/**
+	 * Returns this item's {@link ItemStack}. This stack is mutable.
+	 *
+	 * @return this item's {@link ItemStack}.
+	 */
+	public ItemStack getStack() {
+		return stack;
+	}
+
+	/**
+	 * Returns the X coordinate of the position at which this item was dropped.
+	 *
+	 * @return the X coordinate of the position at which this item was dropped.
+	 */
+	public double getX() {
+		return x;
+	}
+
+	/**
+	 * Returns the Y coordinate of the position at which this item was dropped.
+	 *
+	 * @return the Y coordinate of the position at which this item was dropped.
+	 */
+	public double getY() {
+		return y;
+	}
+
+	/**
+	 * Returns the Z coordinate of the position at which this item was dropped.
+	 *
+	 * @return the Z coordinate of the position at which this item was dropped.
+	 */
+	public double getZ() {
+		return z;
+	}
+
+	/**
+	 * Returns a copy of this item with a copied {@link ItemStack}.
+	 *
+	 * @return a copy of this item.
+	 */
+	public DeathChestItem copy() {
+		return new DeathChestItem(stack.copy(), x, y, z);
+	}
+
+	/**
+	 * Creates an {@link ItemEntity} for this item at the position at which it was dropped.
+	 * The {@link ItemEntity} is not spawned.
+	 *
+	 * @param world a {@link World}.
+	 * @return an {@link ItemEntity} containing a copy of this item's {@link ItemStack}.
+	 */
+	public ItemEntity toEntity(World world) {
+		return new ItemEntity(world, x, y, z, stack.copy());
+	}
+
+	/**
+	 * Serializes this item to a {@link CompoundTag}.
+	 * The format is compatible with the subset of the {@link ItemEntity} format that it uses.
+	 *
+	 * @param tag a {@link CompoundTag}.
+	 * @return the {@link CompoundTag}.
+	 */
+	public CompoundTag toTag(CompoundTag tag) {
+		tag.put("Item", stack.toTag(new CompoundTag()));
+
+		final ListTag posList = new ListTag();
+		posList.add(DoubleTag.of(x));
+		posList.add(DoubleTag.of(y));
+		posList.add(DoubleTag.of(z));
+		tag.put("Pos", posList);
+
+		return tag;
+	}
+
+	/**
+	 * Creates a {@link DeathChestItem} from the specified {@link ItemEntity}.
+	 *
+	 * @param entity an {@link ItemEntity}.
+	 * @return a {@link DeathChestItem} that shares the entity's {@link ItemStack}.
+	 */
+	public static DeathChestItem of(ItemEntity entity) {
+		return new DeathChestItem(entity.getStack(), entity.getX(), entity.getY(), entity.getZ());
+	}
+
+	/**
+	 * Deserializes an item from a {@link CompoundTag}.
+	 * Serialized {@link ItemEntity}s are also supported.
+	 *
+	 * @param tag a {@link CompoundTag}.
+	 * @return the deserialized {@link DeathChestItem}.
+	 */
+	public static DeathChestItem fromTag(CompoundTag tag) {
+		final ListTag posList = tag.getList("Pos", NbtType.DOUBLE);
+		return new DeathChestItem(
+				ItemStack.fromTag(tag.getCompound("Item")),
+				posList.getDouble(0), posList.getDouble(1), posList.getDouble(2)
+		);
+	}
+}
@@ -0,0 +1,150 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2021 TheRandomLabs
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.therandomlabs.vanilladeathchest.deathchest;
+
+import com.therandomlabs.vanilladeathchest.VDCConfig;
+import com.therandomlabs.vanilladeathchest.VanillaDeathChest;
+import com.therandomlabs.vanilladeathchest.world.DeathChestsState;
+import net.minecraft.block.Blocks;
+import net.minecraft.block.entity.BlockEntity;
+import net.minecraft.inventory.Inventory;
+import net.minecraft.server.network.ServerPlayerEntity;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.text.LiteralText;
+import net.minecraft.util.ItemScatterer;
+import net.minecraft.util.math.BlockPos;
+
+/**
+ * Handles death chest lifecycle transitions, such as the expiry of death chest protection and
+ * the removal of expired death chests.
+ */
+public final class DeathChestLifecycle {
+	//Protection that expired longer ago than this expired while the death chest was not loaded,
+	//so its owner is not notified.
+	private static final long NOTIFICATION_WINDOW = 20L;
+
+	private DeathChestLifecycle() {}
+
+	/**
+	 * Fires any lifecycle transitions that are due.
+	 * This is called at the end of every world tick.
+	 *
+	 * @param world a {@link ServerWorld}.
+	 */
+	public static void update(ServerWorld world) {
+		final DeathChestsState state = DeathChestsState.get(world);
+		state.advanceProtectionTimers(DeathChestLifecycle::onProtectionExpired);
+		state.advanceExpiryTimers();
+
+		//Expired death chests are removed in batches so that a large number of them expiring
+		//at once does not stall a single tick.
+		final VDCConfig.Expiry config = VanillaDeathChest.config().expiry;
+
+		for (int i = 0; i < config.maxRemovalsPerTick; i++) {
+			final DeathChest deathChest = state.pollExpiredDeathChest();
+
+			if (deathChest == null) {
+				return;
+			}
+
+			removeExpired(state, deathChest, config.contentsBehavior);
+		}
+	}
+
+	private static void onProtectionExpired(DeathChest deathChest, long expiryTime) {
+		final VDCConfig.Protection config = VanillaDeathChest.config().protection;
+
+		if (config.unlockWhenExpired) {
+			deathChest.setLocked(false);
+		}
+
+		final ServerWorld world = deathChest.getWorld();
+
+		if (config.expiryMessage.isEmpty() ||
+				world.getTime() - expiryTime > NOTIFICATION_WINDOW) {
+			return;
+		}
+
+		//The owner may be in a different world.
+		final ServerPlayerEntity player =
+				world.getServer().getPlayerManager().getPlayer(deathChest.getPlayerUUID());
+
+		if (player != null) {
+			final BlockPos pos = deathChest.getPos();
+			player.sendMessage(new LiteralText(String.format(
+					config.expiryMessage, pos.getX(), pos.getY(), pos.getZ()
+			)), false);
+		}
+	}
+
+	private static void removeExpired(
+			DeathChestsState state, DeathChest deathChest,
+			VDCConfig.ExpiredContentsBehavior contentsBehavior
+	) {
+		final ServerWorld world = deathChest.getWorld();
+		final BlockPos pos = deathChest.getPos();
+		final boolean isDoubleChest = deathChest.isDoubleChest();
+
+		//Don't unnecessarily load any chunks. The death chest is returned again once the chunk
+		//of its east half is loaded.
+		if (isDoubleChest && !state.isChunkLoaded((pos.getX() + 1) >> 4, pos.getZ() >> 4)) {
+			return;
+		}
+
+		removeContents(world, pos, contentsBehavior);
+
+		if (isDoubleChest) {
+			removeContents(world, pos.east(), contentsBehavior);
+		}
+
+		//This causes the death chest to be removed from the DeathChestsState.
+		world.setBlockState(pos, Blocks.AIR.getDefaultState());
+
+		if (isDoubleChest) {
+			world.setBlockState(pos.east(), Blocks.AIR.getDefaultState());
+		}
+
+		VanillaDeathChest.logger.info(
+				"Death chest with identifier {} at [{}, {}, {}] expired",
+				deathChest.getIdentifier(), pos.getX(), pos.getY(), pos.getZ()
+		);
+	}
+
+	private static void removeContents(
+			ServerWorld world, BlockPos pos, VDCConfig.ExpiredContentsBehavior contentsBehavior
+	) {
+		final BlockEntity blockEntity = world.getBlockEntity(pos);
+
+		if (!(blockEntity instanceof Inventory)) {
+			return;
+		}
+
+		if (contentsBehavior == VDCConfig.ExpiredContentsBehavior.DROP) {
+			ItemScatterer.spawn(world, pos, (Inventory) blockEntity);
+		}
+
+		//Chests drop their contents when they are replaced, so they are cleared either way.
+		((Inventory) blockEntity).clear();
+	}
+}
@@ -23,25 +23,16 @@
 
 package com.therandomlabs.vanilladeathchest.deathchest;
 
-import java.util.ArrayList;
-import java.util.Iterator;
-import java.util.List;
+import java.util.Arrays;
+import java.util.UUID;
 
-import com.google.common.collect.ImmutableList;
 import com.therandomlabs.vanilladeathchest.VDCConfig;
 import com.therandomlabs.vanilladeathchest.VanillaDeathChest;
-import net.minecraft.block.BlockState;
 import net.minecraft.block.Blocks;
 import net.minecraft.entity.player.PlayerEntity;
-import net.minecraft.item.ItemPlacementContext;
-import net.minecraft.item.ItemUsageContext;
-import net.minecraft.util.Hand;
-import net.minecraft.util.hit.BlockHitResult;
 import net.minecraft.util.math.BlockPos;
-import net.minecraft.util.math.Direction;
-import net.minecraft.util.math.Vec3d;
+import net.minecraft.world.Heightmap;
 import net.minecraft.world.World;
-import org.checkerframework.checker.nullness.qual.NonNull;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
 /**
@@ -81,143 +72,464 @@ public final class DeathChestLocationFinder {
 		}
 	}
 
-	private static final class SearchOrder implements Iterable<BlockPos> {
-		private final int size;
-		private List<BlockPos> translations;
+	/**
+	 * Visits each position in a box around a center once, in nearest-first order, without
+	 * allocating anything per position.
+	 */
+	//Octant offsets (|x|, |y|, |z|) are generated lazily from a min-heap keyed by squared
+	//distance, and each one is then expanded into its sign variants.
+	static final class SearchOrder {
+		private static final int COMPONENT_BITS = 21;
+		private static final long COMPONENT_MASK = (1L << COMPONENT_BITS) - 1L;
+		private static final int MAX_RADIUS = (int) COMPONENT_MASK;
+		private static final int VARIANTS = 8;
+
+		private final BlockPos center;
+		private final int radiusX;
+		private final int radiusY;
+		private final int radiusZ;
+		//Packed octant offsets. The heap only holds the frontier of the offsets that have been
+		//visited, which is at most quadratic in the radius.
+		private long[] heap = new long[64];
+		private int heapSize;
+		private int x;
+		private int y;
+		private int z;
+		private int variant = VARIANTS;
 
-		private SearchOrder(int size) {
-			this.size = size;
+		/**
+		 * Constructs a {@link SearchOrder}.
+		 *
+		 * @param center the center of the box.
+		 * @param radius the horizontal radius of the box.
+		 * @param radiusY the vertical radius of the box, which is capped at {@code radius}.
+		 */
+		SearchOrder(BlockPos center, int radius, int radiusY) {
+			this.center = center;
+			radiusX = Math.min(radius, MAX_RADIUS);
+			this.radiusY = Math.min(radiusY, radiusX);
+			radiusZ = radiusX;
+			push(0L);
+		}
 
-			translations = new ArrayList<>();
+		/**
+		 * Sets the specified position to the next position in the box.
+		 *
+		 * @param pos a {@link BlockPos.Mutable}.
+		 * @return {@code true} if there was a next position, or otherwise {@code false}.
+		 */
+		boolean next(BlockPos.Mutable pos) {
+			while (true) {
+				while (variant < VARIANTS) {
+					final int signs = variant++;
+
+					//Negating zero would visit the same offset twice.
+					if (((signs & 1) != 0 && x == 0) || ((signs & 2) != 0 && y == 0) ||
+							((signs & 4) != 0 && z == 0)) {
+						continue;
+					}
+
+					pos.set(
+							center.getX() + ((signs & 1) == 0 ? x : -x),
+							center.getY() + ((signs & 2) == 0 ? y : -y),
+							center.getZ() + ((signs & 4) == 0 ? z : -z)
+					);
+					return true;
+				}
+
+				if (heapSize == 0) {
+					return false;
+				}
+
+				final long offset = pop();
+				x = (int) (offset & COMPONENT_MASK);
+				y = (int) ((offset >> COMPONENT_BITS) & COMPONENT_MASK);
+				z = (int) (offset >> (COMPONENT_BITS * 2));
+				variant = 0;
+
+				//Each octant offset has exactly one parent, and no child is nearer than its
+				//parent, so every offset is pushed once and popped in order.
+				if (z < radiusZ) {
+					push(pack(x, y, z + 1));
+				}
+
+				if (z == 0) {
+					if (y < radiusY) {
+						push(pack(x, y + 1, 0));
+					}
+
+					if (y == 0 && x < radiusX) {
+						push(pack(x + 1, 0, 0));
+					}
+				}
+			}
+		}
 
-			for (int x = 0; x <= size; x++) {
-				addTranslations(x);
-				addTranslations(-x);
+		private void push(long offset) {
+			if (heapSize == heap.length) {
+				heap = Arrays.copyOf(heap, heapSize * 2);
 			}
 
-			translations = ImmutableList.copyOf(translations);
-		}
+			int index = heapSize++;
+			final long distance = squaredDistance(offset);
 
-		@NonNull
-		@Override
-		public Iterator<BlockPos> iterator() {
-			return translations.iterator();
-		}
+			while (index > 0) {
+				final int parent = (index - 1) >>> 1;
+
+				if (squaredDistance(heap[parent]) <= distance) {
+					break;
+				}
 
-		private void addTranslations(int x) {
-			for (int y = 0; y <= size; y++) {
-				addTranslations(x, y);
-				addTranslations(x, -y);
+				heap[index] = heap[parent];
+				index = parent;
 			}
+
+			heap[index] = offset;
 		}
 
-		private void addTranslations(int x, int y) {
-			for (int z = 0; z <= size; z++) {
-				translations.add(new BlockPos(x, y, z));
-				translations.add(new BlockPos(x, y, -z));
+		private long pop() {
+			final long first = heap[0];
+			final long last = heap[--heapSize];
+			final long distance = squaredDistance(last);
+			int index = 0;
+
+			while (true) {
+				int child = index * 2 + 1;
+
+				if (child >= heapSize) {
+					break;
+				}
+
+				if (child + 1 < heapSize &&
+						squaredDistance(heap[child + 1]) < squaredDistance(heap[child])) {
+					child++;
+				}
+
+				if (distance <= squaredDistance(heap[child])) {
+					break;
+				}
+
+				heap[index] = heap[child];
+				index = child;
 			}
+
+			heap[index] = last;
+			return first;
 		}
-	}
 
-	@Nullable
-	private static SearchOrder searchOrder;
+		private static long pack(int x, int y, int z) {
+			return x | ((long) y << COMPONENT_BITS) | ((long) z << (COMPONENT_BITS * 2));
+		}
 
-	private DeathChestLocationFinder() {}
+		private static long squaredDistance(long offset) {
+			final long x = offset & COMPONENT_MASK;
+			final long y = (offset >> COMPONENT_BITS) & COMPONENT_MASK;
+			final long z = offset >> (COMPONENT_BITS * 2);
+			return x * x + y * y + z * z;
+		}
+	}
 
 	/**
-	 * Finds the most suitable location to place a queued death chest.
-	 *
-	 * @param deathChest a queued {@link DeathChest}.
-	 * @param doubleChest whether a double chest is preferred.
-	 * @return a {@link Location} that describes the most suitable location to place the specified
-	 * death chest.
+	 * A resumable search for the most suitable location to place a queued death chest.
+	 * Candidate locations are visited nearest-first, and the search can be advanced a limited
+	 * number of candidates at a time so that it can be spread across multiple ticks.
 	 */
-	@Nullable
-	public static Location find(DeathChest deathChest, boolean doubleChest) {
-		final World world = deathChest.getWorld();
-		final PlayerEntity player = world.getPlayerByUuid(deathChest.getPlayerUUID());
-		final BlockPos pos = deathChest.getPos();
+	public static final class Search {
+		//How far above and below its starting height each column is searched in heightmap mode.
+		private static final int COLUMN_BAND = 4;
 
-		final VDCConfig.Spawning config = VanillaDeathChest.config().spawning;
+		private final World world;
+		private final UUID playerUUID;
+		private final BlockPos pos;
+		private final int searchY;
+		private final boolean doubleChest;
+		private final boolean heightmap;
+		private final boolean requireSolid;
+		private final SearchOrder searchOrder;
+		private final SearchVolume volume;
+		private final PlacementStates states;
+		private final BlockPos.Mutable potentialPos = new BlockPos.Mutable();
+		private final BlockPos.Mutable eastPos = new BlockPos.Mutable();
+		private final BlockPos.Mutable belowPos = new BlockPos.Mutable();
+		//In heightmap mode, the column that is being searched, where the search starts and ends,
+		//and the next step in it. A negative step means that the next column should be started.
+		private final BlockPos.Mutable columnPos = new BlockPos.Mutable();
+		private int columnStart;
+		private int columnTop;
+		private int columnSteps;
+		private int columnStep = -1;
+		//The nearest location in which at least a single chest can be placed.
+		@Nullable
+		private BlockPos singleChestPos;
+		@Nullable
+		private BlockPos doubleChestPos;
+		private boolean done;
 
-		final BlockPos searchPos = new BlockPos(
-				pos.getX(), Math.min(256, Math.max(1, pos.getY())), pos.getZ()
-		);
+		/**
+		 * Constructs a {@link Search} for the specified queued death chest.
+		 *
+		 * @param deathChest a queued {@link DeathChest}.
+		 * @param doubleChest whether a double chest is preferred.
+		 */
+		public Search(DeathChest deathChest, boolean doubleChest) {
+			world = deathChest.getWorld();
+			playerUUID = deathChest.getPlayerUUID();
+			pos = deathChest.getPos();
+			this.doubleChest = doubleChest;
+
+			final VDCConfig.Spawning config = VanillaDeathChest.config().spawning;
+
+			final BlockPos searchPos = new BlockPos(
+					pos.getX(), Math.min(256, Math.max(1, pos.getY())), pos.getZ()
+			);
+
+			//In heightmap mode, columns are searched one at a time, so the search order is flat.
+			//Otherwise, offsets that are further above or below the search position than this
+			//are always outside the world.
+			searchY = searchPos.getY();
+			heightmap = config.locationSearchMode == VDCConfig.LocationSearchMode.HEIGHTMAP;
+			requireSolid = config.requirePlacementOnSolidBlocks;
+			final int radiusY = heightmap ?
+					0 : Math.max(searchPos.getY() - 1, world.getHeight() - searchPos.getY());
+			searchOrder = new SearchOrder(searchPos, config.locationSearchRadius, radiusY);
+			//The volume also covers the neighbors of the east halves of double chests.
+			final int radius = config.locationSearchRadius;
+			volume = new SearchVolume(
+					world, searchPos.getX() - radius - 1, searchPos.getZ() - radius - 1,
+					searchPos.getX() + radius + 2, searchPos.getZ() + radius + 1
+			);
+			states = new PlacementStates(world);
+		}
 
-		BlockPos singleChestPos = null;
+		/**
+		 * Visits up to the specified number of candidate locations.
+		 * This does nothing if the search is done.
+		 *
+		 * @param maxCandidates the maximum number of candidate locations to visit.
+		 * @return the number of candidate locations that were visited.
+		 */
+		public int run(int maxCandidates) {
+			//The player and the chunks are looked up again on every call so that a search that
+			//spans multiple ticks does not keep them around.
+			final PlayerEntity player = world.getPlayerByUuid(playerUUID);
+			int candidates = 0;
+
+			while (!done && candidates < maxCandidates) {
+				if (!(heightmap ? nextInColumns() : searchOrder.next(potentialPos))) {
+					done = true;
+					break;
+				}
+
+				final int x = potentialPos.getX();
+				final int z = potentialPos.getZ();
+
+				if (!heightmap && requireSolid &&
+						potentialPos.getY() > volume.getTopY(Heightmap.Type.WORLD_SURFACE, x, z)) {
+					//Everything above the world surface is air, so nothing can be placed on it.
+					continue;
+				}
+
+				candidates++;
+
+				if (!canPlace(world, player, volume, states, potentialPos, belowPos)) {
+					continue;
+				}
+
+				if (singleChestPos == null) {
+					singleChestPos = potentialPos.toImmutable();
+				}
+
+				if (!doubleChest) {
+					done = true;
+					break;
+				}
+
+				eastPos.set(x + 1, potentialPos.getY(), z);
+
+				if (canPlace(world, player, volume, states, eastPos, belowPos)) {
+					doubleChestPos = potentialPos.toImmutable();
+					done = true;
+				}
+			}
 
-		for (BlockPos translation : getSearchOrder(config.locationSearchRadius)) {
-			final BlockPos potentialPos = searchPos.add(translation);
+			volume.clear();
+			return candidates;
+		}
 
-			if (!canPlace(world, player, potentialPos)) {
-				continue;
+		//Visits the positions in each column within COLUMN_BAND blocks of either the surface or
+		//the search height, whichever is lower, nearest first. This jumps straight to the surface
+		//for deaths above it, but never onto a ceiling such as the bedrock roof of the Nether.
+		private boolean nextInColumns() {
+			while (true) {
+				if (columnStep < 0) {
+					if (!searchOrder.next(columnPos)) {
+						return false;
+					}
+
+					columnTop = Math.min(world.getHeight(), volume.getTopY(
+							Heightmap.Type.MOTION_BLOCKING_NO_LEAVES,
+							columnPos.getX(), columnPos.getZ()
+					));
+					columnStart = Math.min(searchY, columnTop);
+					columnSteps = 2 * COLUMN_BAND + 1;
+					columnStep = 0;
+				}
+
+				final int step = columnStep++;
+
+				if (columnStep >= columnSteps) {
+					columnStep = -1;
+				}
+
+				//0, -1, 1, -2, 2...
+				final int y = columnStart + ((step & 1) == 0 ? step >> 1 : -((step + 1) >> 1));
+
+				if (y >= 1 && y <= columnTop) {
+					potentialPos.set(columnPos.getX(), y, columnPos.getZ());
+					return true;
+				}
 			}
+		}
 
-			if (!doubleChest || canPlace(world, player, potentialPos.east())) {
-				return new Location(potentialPos, doubleChest);
+		/**
+		 * Returns whether this search is done, i.e. whether the most suitable location has been
+		 * found or all candidate locations have been visited.
+		 *
+		 * @return {@code true} if this search is done, or otherwise {@code false}.
+		 */
+		public boolean isDone() {
+			return done;
+		}
+
+		/**
+		 * Returns whether a double chest is preferred by this search.
+		 *
+		 * @return {@code true} if a double chest is preferred, or otherwise {@code false}.
+		 */
+		public boolean isDoubleChestPreferred() {
+			return doubleChest;
+		}
+
+		/**
+		 * Returns the most suitable location found by this search.
+		 * If this search is not done, a more suitable location may still be found.
+		 *
+		 * @param doubleChest whether a double chest is still preferred.
+		 * @return a {@link Location} that describes the most suitable location to place the
+		 * death chest, or {@code null} if there is none.
+		 */
+		@Nullable
+		public Location getLocation(boolean doubleChest) {
+			if (doubleChest && doubleChestPos != null) {
+				return new Location(doubleChestPos, true);
 			}
 
-			if (singleChestPos == null) {
-				singleChestPos = potentialPos;
+			if (singleChestPos != null) {
+				return new Location(singleChestPos, false);
 			}
-		}
 
-		if (singleChestPos != null) {
-			return new Location(singleChestPos, false);
+			return VanillaDeathChest.config().spawning.forcePlacementIfNoSuitableLocation ?
+					new Location(pos, doubleChest) : null;
 		}
 
-		return config.forcePlacementIfNoSuitableLocation ? new Location(pos, doubleChest) : null;
-	}
+		/**
+		 * Returns whether the location that {@link #getLocation(boolean)} returns for the
+		 * specified preference is still suitable.
+		 * Because the search may span multiple ticks, the world may have changed since the
+		 * location was visited.
+		 *
+		 * @param doubleChest whether a double chest is still preferred.
+		 * @return {@code true} if the location is still suitable or was forcibly chosen,
+		 * or otherwise {@code false}.
+		 */
+		public boolean isLocationValid(boolean doubleChest) {
+			final Location location = getLocation(doubleChest);
+
+			if (location == null || (singleChestPos == null && doubleChestPos == null)) {
+				return true;
+			}
+
+			final PlayerEntity player = world.getPlayerByUuid(playerUUID);
+			final BlockPos locationPos = location.getPos();
+			final int x = locationPos.getX();
+			final int z = locationPos.getZ();
+			final SearchVolume locationVolume =
+					new SearchVolume(world, x - 1, z - 1, x + 2, z + 1);
+
+			if (!canPlace(world, player, locationVolume, states, locationPos, belowPos)) {
+				return false;
+			}
 
-	@SuppressWarnings("PMD.NonThreadSafeSingleton")
-	private static Iterable<BlockPos> getSearchOrder(int size) {
-		if (searchOrder == null || searchOrder.size != size) {
-			searchOrder = new SearchOrder(size);
+			if (!location.isDoubleChest()) {
+				return true;
+			}
+
+			eastPos.set(x + 1, locationPos.getY(), z);
+			return canPlace(world, player, locationVolume, states, eastPos, belowPos);
 		}
+	}
 
-		return searchOrder;
+	private DeathChestLocationFinder() {}
+
+	/**
+	 * Finds the most suitable location to place a queued death chest.
+	 * This runs the entire search at once.
+	 *
+	 * @param deathChest a queued {@link DeathChest}.
+	 * @param doubleChest whether a double chest is preferred.
+	 * @return a {@link Location} that describes the most suitable location to place the specified
+	 * death chest.
+	 */
+	@Nullable
+	public static Location find(DeathChest deathChest, boolean doubleChest) {
+		final Search search = new Search(deathChest, doubleChest);
+		search.run(Integer.MAX_VALUE);
+		return search.getLocation(doubleChest);
 	}
 
+	//belowPos is used as scratch space.
 	private static boolean canPlace(
-			World world, PlayerEntity player, BlockPos pos, boolean doubleChest
+			World world, PlayerEntity player, SearchVolume volume, PlacementStates states,
+			BlockPos pos, BlockPos.Mutable belowPos
 	) {
-		if (doubleChest) {
-			return canPlace(world, player, pos) && canPlace(world, player, pos.east());
-		}
-
-		return canPlace(world, player, pos);
-	}
+		final int x = pos.getX();
+		final int y = pos.getY();
+		final int z = pos.getZ();
 
-	private static boolean canPlace(World world, PlayerEntity player, BlockPos pos) {
-		if (!world.canPlayerModifyAt(player, pos) ||
-				(VanillaDeathChest.config().spawning.requirePlacementOnSolidBlocks &&
-						!world.isTopSolid(pos.down(), player))) {
+		if (!world.canPlayerModifyAt(player, pos)) {
 			return false;
 		}
 
-		final ItemPlacementContext context = new ItemPlacementContext(new ItemUsageContext(
-				player, Hand.MAIN_HAND,
-				new BlockHitResult(new Vec3d(0.0, 0.0, 0.0), Direction.DOWN, pos, false)
-		));
+		if (VanillaDeathChest.config().spawning.requirePlacementOnSolidBlocks) {
+			belowPos.set(x, y - 1, z);
 
-		if (isReplaceable(world, pos, context) && isReplaceable(world, pos.up(), context)) {
-			return isNotChest(world, pos.north()) && isNotChest(world, pos.east()) &&
-					isNotChest(world, pos.south()) && isNotChest(world, pos.west());
+			if (!states.isSolidTop(volume.getBlockState(x, y - 1, z), belowPos)) {
+				return false;
+			}
+		}
+
+		if (isReplaceable(world, volume, states, pos, 0) &&
+				isReplaceable(world, volume, states, pos, 1)) {
+			return isNotChest(volume, x, y, z - 1) && isNotChest(volume, x + 1, y, z) &&
+					isNotChest(volume, x, y, z + 1) && isNotChest(volume, x - 1, y, z);
 		}
 
 		return false;
 	}
 
-	private static boolean isReplaceable(World world, BlockPos pos, ItemPlacementContext context) {
-		if (pos.getY() < 1 || pos.getY() > world.getHeight()) {
+	private static boolean isReplaceable(
+			World world, SearchVolume volume, PlacementStates states, BlockPos pos, int offsetY
+	) {
+		final int y = pos.getY() + offsetY;
+
+		if (y < 1 || y > world.getHeight()) {
 			return false;
 		}
 
-		final BlockState state = world.getBlockState(pos);
-		return state.isAir() || state.canReplace(context);
+		return states.isReplaceable(volume.getBlockState(pos.getX(), y, pos.getZ()), pos);
 	}
 
-	private static boolean isNotChest(World world, BlockPos pos) {
-		return world.getBlockState(pos).getBlock() != Blocks.CHEST;
+	private static boolean isNotChest(SearchVolume volume, int x, int y, int z) {
+		return volume.getBlockState(x, y, z).getBlock() != Blocks.CHEST;
 	}
 }
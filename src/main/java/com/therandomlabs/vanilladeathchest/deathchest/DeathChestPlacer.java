@@ -27,7 +27,6 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
-import java.util.Queue;
 import java.util.Set;
 import java.util.regex.Pattern;
 
@@ -47,7 +46,6 @@ import net.minecraft.block.entity.LootableContainerBlockEntity;
 import net.minecraft.block.enums.ChestType;
 import net.minecraft.entity.Entity;
 import net.minecraft.entity.EntityType;
-import net.minecraft.entity.ItemEntity;
 import net.minecraft.entity.SpawnReason;
 import net.minecraft.entity.mob.MobEntity;
 import net.minecraft.entity.player.PlayerEntity;
@@ -77,26 +75,58 @@ public final class DeathChestPlacer {
 	private DeathChestPlacer() {}
 
 	/**
-	 * Places all queued death chests that are ready to be placed in the specified world.
-	 * This is called at the end of every world tick.
+	 * Advances the location searches for queued death chests and places all queued death chests
+	 * that are ready to be placed in the specified world.
+	 * This is called at the start of every world tick.
 	 *
 	 * @param world a {@link ServerWorld}.
 	 */
-	@SuppressWarnings("ConstantConditions")
+	@SuppressWarnings("NullAway")
 	public static void placeQueued(ServerWorld world) {
 		final DeathChestsState state = DeathChestsState.get(world);
-		final Queue<DeathChest> queue = state.getQueuedDeathChests();
+		DeathChest deathChest = state.peekQueuedDeathChest();
 
-		//We wait two ticks to prevent conflicts with other mods that place things after death.
-		if (queue.isEmpty() || world.getTime() - queue.peek().getCreationTime() < 2L) {
+		if (deathChest == null) {
 			return;
 		}
 
-		while (!queue.isEmpty() && world.getTime() - queue.peek().getCreationTime() >= 2L) {
-			placeAndDropRemaining(queue.poll());
+		//Location searches are started straight away and spread across ticks so that no single
+		//tick has to check more than the budget. The next death chest to be placed comes first.
+		int budget = VanillaDeathChest.config().spawning.locationSearchBudget;
+		budget -= advanceSearch(state, deathChest, budget);
+
+		for (DeathChest queued : state.getQueuedDeathChests()) {
+			if (budget <= 0) {
+				break;
+			}
+
+			if (queued != deathChest) {
+				budget -= advanceSearch(state, queued, budget);
+			}
 		}
 
-		state.markDirty();
+		//We wait two ticks to prevent conflicts with other mods that place things after death.
+		while (deathChest != null && world.getTime() - deathChest.getCreationTime() >= 2L) {
+			final DeathChestLocationFinder.Search search = state.getLocationSearch(deathChest);
+
+			if (search == null || !search.isDone()) {
+				break;
+			}
+
+			//Container consumption may still turn a double chest into a single chest, so every
+			//location that may be chosen is checked.
+			if (!search.isLocationValid(true) || !search.isLocationValid(false)) {
+				//The world has changed since the location was found, so the search is restarted
+				//on the next tick.
+				state.setLocationSearch(deathChest, new DeathChestLocationFinder.Search(
+						deathChest, search.isDoubleChestPreferred()
+				));
+				break;
+			}
+
+			placeAndDropRemaining(state.pollQueuedDeathChest(), search);
+			deathChest = state.peekQueuedDeathChest();
+		}
 	}
 
 	/**
@@ -109,7 +139,7 @@ public final class DeathChestPlacer {
 	public static boolean placeAndFillContainer(DeathChest deathChest) {
 		final VDCConfig.Spawning config = VanillaDeathChest.config().spawning;
 		final BlockPos pos = deathChest.getPos();
-		final List<ItemEntity> items = deathChest.getItems();
+		final List<DeathChestItem> items = deathChest.getItems();
 		final boolean doubleChest = deathChest.isDoubleChest();
 
 		final Block block;
@@ -236,33 +266,68 @@ public final class DeathChestPlacer {
 		}
 	}
 
-	private static void placeAndDropRemaining(DeathChest deathChest) {
-		final List<ItemEntity> allItems = deathChest.cloneItems();
+	//Starts the location search for the specified death chest if necessary, and returns the
+	//number of candidate locations that were visited.
+	private static int advanceSearch(DeathChestsState state, DeathChest deathChest, int budget) {
+		DeathChestLocationFinder.Search search = state.getLocationSearch(deathChest);
+
+		if (search == null) {
+			search = new DeathChestLocationFinder.Search(
+					deathChest, isDoubleChestPreferred(deathChest)
+			);
+			state.setLocationSearch(deathChest, search);
+		}
+
+		return search.run(budget);
+	}
+
+	//Whether a double chest should be searched for before the items have been filtered.
+	//Container consumption can only turn this into a single chest, and a location found for a
+	//double chest is also suitable for a single chest.
+	private static boolean isDoubleChestPreferred(DeathChest deathChest) {
+		final VDCConfig.Spawning config = VanillaDeathChest.config().spawning;
+		final VDCConfig.ContainerType type = config.containerType;
 
-		final DeathChest newDeathChest = place(allItems, deathChest);
-		final List<ItemEntity> items =
+		if (type != VDCConfig.ContainerType.SINGLE_OR_DOUBLE_CHEST &&
+				type != VDCConfig.ContainerType.SINGLE_OR_DOUBLE_SHULKER_BOX) {
+			return false;
+		}
+
+		final Pattern pattern = config.getRegistryNamePattern();
+		//The items of queued death chests are not exposed so that their snapshots stay cached.
+		return deathChest.cloneItems().stream().
+				filter(item -> pattern.matcher(
+						Registry.ITEM.getId(item.getStack().getItem()).toString()
+				).matches()).
+				count() > 27;
+	}
+
+	private static void placeAndDropRemaining(
+			DeathChest deathChest, DeathChestLocationFinder.Search search
+	) {
+		final List<DeathChestItem> allItems = deathChest.cloneItems();
+
+		final DeathChest newDeathChest = place(allItems, deathChest, search);
+		final List<DeathChestItem> items =
 				newDeathChest == null ? Collections.emptyList() : newDeathChest.getItems();
 
 		final World world = deathChest.getWorld();
 
-		for (ItemEntity drop : allItems) {
+		for (DeathChestItem drop : allItems) {
 			if (!items.contains(drop)) {
-				if (drop.removed) {
-					world.spawnEntity(new ItemEntity(
-							world, drop.getX(), drop.getY(), drop.getZ(), drop.getStack().copy()
-					));
-				} else {
-					world.spawnEntity(drop);
-				}
+				world.spawnEntity(drop.toEntity(world));
 			}
 		}
 	}
 
 	@Nullable
-	private static DeathChest place(List<ItemEntity> allItems, DeathChest deathChest) {
+	private static DeathChest place(
+			List<DeathChestItem> allItems, DeathChest deathChest,
+			DeathChestLocationFinder.Search search
+	) {
 		final VDCConfig.Spawning config = VanillaDeathChest.config().spawning;
 
-		final Pattern pattern = Pattern.compile(config.registryNameRegex);
+		final Pattern pattern = config.getRegistryNamePattern();
 		deathChest.getItems().removeIf(
 				item -> !pattern.matcher(
 						Registry.ITEM.getId(item.getStack().getItem()).toString()
@@ -279,15 +344,11 @@ public final class DeathChestPlacer {
 						type == VDCConfig.ContainerType.SINGLE_OR_DOUBLE_SHULKER_BOX);
 
 		final ServerWorld world = deathChest.getWorld();
-		final List<ItemEntity> allItemsBeforeContainerConsumption = new ArrayList<>();
+		final List<DeathChestItem> allItemsBeforeContainerConsumption = new ArrayList<>();
 
 		if (config.useContainerInInventory) {
-			for (ItemEntity item : allItems) {
-				allItemsBeforeContainerConsumption.add(
-						new ItemEntity(
-								world, item.getX(), item.getY(), item.getZ(), item.getStack().copy()
-						)
-				);
+			for (DeathChestItem item : allItems) {
+				allItemsBeforeContainerConsumption.add(item.copy());
 			}
 
 			final ContainerConsumptionResult result =
@@ -302,8 +363,7 @@ public final class DeathChestPlacer {
 			}
 		}
 
-		final DeathChestLocationFinder.Location location =
-				DeathChestLocationFinder.find(deathChest, doubleChest);
+		final DeathChestLocationFinder.Location location = search.getLocation(doubleChest);
 
 		if (location == null) {
 			VanillaDeathChest.logger.warn(
@@ -355,14 +415,14 @@ public final class DeathChestPlacer {
 	}
 
 	private static ContainerConsumptionResult consumeContainerInInventory(
-			List<ItemEntity> allItems, DeathChest deathChest, boolean doubleChest
+			List<DeathChestItem> allItems, DeathChest deathChest, boolean doubleChest
 	) {
 		final VDCConfig.ContainerType type = VanillaDeathChest.config().spawning.containerType;
-		final Set<ItemEntity> emptyItems = new HashSet<>();
+		final Set<DeathChestItem> emptyItems = new HashSet<>();
 
 		int availableContainers = 0;
 
-		for (ItemEntity item : allItems) {
+		for (DeathChestItem item : allItems) {
 			final ItemStack stack = item.getStack();
 
 			if (type == VDCConfig.ContainerType.SINGLE_CHEST ||
@@ -0,0 +1,149 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2021 TheRandomLabs
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.therandomlabs.vanilladeathchest.deathchest;
+
+import java.util.Arrays;
+
+import net.minecraft.block.Block;
+import net.minecraft.block.BlockState;
+import net.minecraft.block.ShapeContext;
+import net.minecraft.item.ItemPlacementContext;
+import net.minecraft.item.ItemStack;
+import net.minecraft.util.Hand;
+import net.minecraft.util.hit.BlockHitResult;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.Direction;
+import net.minecraft.util.math.Vec3d;
+import net.minecraft.world.EmptyBlockView;
+import net.minecraft.world.World;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Memoizes the properties of block states that are relevant to death chest placement.
+ * The properties are stored in tables indexed by block state ID, which are filled lazily and
+ * shared between all searches, so that checking a candidate position is a few array lookups.
+ * This should only be used on the server thread.
+ */
+final class PlacementStates {
+	private static final byte UNKNOWN = 0;
+	private static final byte TRUE = 1;
+	private static final byte FALSE = 2;
+
+	private static byte[] replaceable = new byte[0];
+	private static byte[] solidTop = new byte[0];
+
+	private final World world;
+	//Created when it is first needed to fill the replaceability table.
+	@Nullable
+	private ItemPlacementContext context;
+
+	/**
+	 * Constructs a {@link PlacementStates} for a search in the specified world.
+	 *
+	 * @param world a {@link World}.
+	 */
+	PlacementStates(World world) {
+		this.world = world;
+	}
+
+	/**
+	 * Returns whether a death chest can replace the specified block state.
+	 * Replaceability is evaluated as if by a player holding nothing, which is always the case
+	 * for a player whose items have been put in a death chest.
+	 *
+	 * @param state a {@link BlockState}.
+	 * @param pos the position of the block state, which is only used if the table entry has yet
+	 * to be filled.
+	 * @return {@code true} if the block state can be replaced, or otherwise {@code false}.
+	 */
+	boolean isReplaceable(BlockState state, BlockPos pos) {
+		final int id = Block.STATE_IDS.getRawId(state);
+
+		if (id < 0) {
+			return computeReplaceable(state, pos);
+		}
+
+		if (id >= replaceable.length) {
+			replaceable = grow(replaceable, id);
+		}
+
+		if (replaceable[id] == UNKNOWN) {
+			replaceable[id] = computeReplaceable(state, pos) ? TRUE : FALSE;
+		}
+
+		return replaceable[id] == TRUE;
+	}
+
+	/**
+	 * Returns whether the top face of the specified block state is solid.
+	 * Block states with dynamic bounds are evaluated at their position every time.
+	 *
+	 * @param state a {@link BlockState}.
+	 * @param pos the position of the block state.
+	 * @return {@code true} if the top face of the block state is solid,
+	 * or otherwise {@code false}.
+	 */
+	boolean isSolidTop(BlockState state, BlockPos pos) {
+		final int id = Block.STATE_IDS.getRawId(state);
+
+		if (id < 0 || state.getBlock().hasDynamicBounds()) {
+			return Block.isFaceFullSquare(
+					state.getCollisionShape(world, pos, ShapeContext.absent()), Direction.UP
+			);
+		}
+
+		if (id >= solidTop.length) {
+			solidTop = grow(solidTop, id);
+		}
+
+		if (solidTop[id] == UNKNOWN) {
+			solidTop[id] = Block.isFaceFullSquare(state.getCollisionShape(
+					EmptyBlockView.INSTANCE, BlockPos.ORIGIN, ShapeContext.absent()
+			), Direction.UP) ? TRUE : FALSE;
+		}
+
+		return solidTop[id] == TRUE;
+	}
+
+	private boolean computeReplaceable(BlockState state, BlockPos pos) {
+		if (state.isAir()) {
+			return true;
+		}
+
+		if (context == null) {
+			//The constructor reads the block at the hit position, so a position that is
+			//already being read is used rather than one that might need to be loaded.
+			context = new ItemPlacementContext(
+					world, null, Hand.MAIN_HAND, ItemStack.EMPTY,
+					new BlockHitResult(Vec3d.ZERO, Direction.DOWN, pos.toImmutable(), false)
+			) {};
+		}
+
+		return state.canReplace(context);
+	}
+
+	private static byte[] grow(byte[] table, int id) {
+		return Arrays.copyOf(table, Math.max(id + 1, Block.STATE_IDS.size()));
+	}
+}
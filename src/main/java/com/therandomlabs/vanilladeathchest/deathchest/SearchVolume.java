@@ -0,0 +1,148 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2021 TheRandomLabs
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.therandomlabs.vanilladeathchest.deathchest;
+
+import java.util.Arrays;
+
+import net.minecraft.block.BlockState;
+import net.minecraft.block.Blocks;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.world.Heightmap;
+import net.minecraft.world.World;
+import net.minecraft.world.chunk.Chunk;
+import net.minecraft.world.chunk.ChunkSection;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * Reads block states and heightmaps in a box-shaped volume of a world directly from the chunks
+ * that cover it. Each chunk in the volume is only looked up once, so reading a block state does
+ * not go through the chunk manager.
+ * The chunks are those that are loaded, so later changes in the world are visible.
+ */
+final class SearchVolume {
+	private final World world;
+	private final int minChunkX;
+	private final int minChunkZ;
+	private final int chunksX;
+	private final int chunksZ;
+	//The chunks in the volume, which are looked up lazily.
+	private final @Nullable Chunk[] chunks;
+
+	/**
+	 * Constructs a {@link SearchVolume}. Chunks are looked up and loaded when they are
+	 * first read.
+	 *
+	 * @param world a {@link World}.
+	 * @param minX the minimum X coordinate.
+	 * @param minZ the minimum Z coordinate.
+	 * @param maxX the maximum X coordinate.
+	 * @param maxZ the maximum Z coordinate.
+	 */
+	SearchVolume(World world, int minX, int minZ, int maxX, int maxZ) {
+		this.world = world;
+		minChunkX = minX >> 4;
+		minChunkZ = minZ >> 4;
+		chunksX = (maxX >> 4) - minChunkX + 1;
+		chunksZ = (maxZ >> 4) - minChunkZ + 1;
+		chunks = new Chunk[chunksX * chunksZ];
+	}
+
+	/**
+	 * Returns the block state at the specified position.
+	 * Positions outside of the volume are read from the world.
+	 *
+	 * @param x an X coordinate.
+	 * @param y a Y coordinate.
+	 * @param z a Z coordinate.
+	 * @return the {@link BlockState} at the specified position.
+	 */
+	BlockState getBlockState(int x, int y, int z) {
+		if (y < 0 || y >= 256) {
+			return Blocks.VOID_AIR.getDefaultState();
+		}
+
+		final Chunk chunk = getChunk(x, z);
+
+		if (chunk == null) {
+			return world.getBlockState(new BlockPos(x, y, z));
+		}
+
+		final ChunkSection section = chunk.getSectionArray()[y >> 4];
+
+		if (section == null || section.isEmpty()) {
+			return Blocks.AIR.getDefaultState();
+		}
+
+		return section.getBlockState(x & 15, y & 15, z & 15);
+	}
+
+	/**
+	 * Returns the Y coordinate of the first block above the highest block that matches the
+	 * specified heightmap type in the specified column.
+	 * Columns outside of the volume are read from the world.
+	 *
+	 * @param type a {@link Heightmap.Type}.
+	 * @param x an X coordinate.
+	 * @param z a Z coordinate.
+	 * @return the Y coordinate of the top of the specified column.
+	 */
+	int getTopY(Heightmap.Type type, int x, int z) {
+		final Chunk chunk = getChunk(x, z);
+
+		if (chunk == null) {
+			return world.getTopY(type, x, z);
+		}
+
+		return chunk.sampleHeightmap(type, x & 15, z & 15) + 1;
+	}
+
+	/**
+	 * Forgets all chunks that have been looked up so that they are not kept loaded in memory.
+	 * They are looked up again when they are next read.
+	 */
+	void clear() {
+		Arrays.fill(chunks, null);
+	}
+
+	//Returns null if the column is outside of the volume.
+	@Nullable
+	private Chunk getChunk(int x, int z) {
+		final int chunkX = (x >> 4) - minChunkX;
+		final int chunkZ = (z >> 4) - minChunkZ;
+
+		if (chunkX < 0 || chunkX >= chunksX || chunkZ < 0 || chunkZ >= chunksZ) {
+			return null;
+		}
+
+		final int index = chunkX * chunksZ + chunkZ;
+		Chunk chunk = chunks[index];
+
+		if (chunk == null) {
+			chunk = world.getChunk(x >> 4, z >> 4);
+			chunks[index] = chunk;
+		}
+
+		return chunk;
+	}
+}
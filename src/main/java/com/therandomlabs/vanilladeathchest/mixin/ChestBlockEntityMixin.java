@@ -23,10 +23,15 @@
 
 package com.therandomlabs.vanilladeathchest.mixin;
 
+import com.therandomlabs.vanilladeathchest.util.NonEmptySlotCount;
 import com.therandomlabs.vanilladeathchest.util.ViewerCount;
 import net.minecraft.block.entity.ChestBlockEntity;
+import net.minecraft.entity.player.PlayerEntity;
 import org.spongepowered.asm.mixin.Mixin;
 import org.spongepowered.asm.mixin.Shadow;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
 
 @Mixin(ChestBlockEntity.class)
 public final class ChestBlockEntityMixin implements ViewerCount {
@@ -41,4 +46,10 @@ public final class ChestBlockEntityMixin implements ViewerCount {
 	public int getViewerCount() {
 		return viewerCount;
 	}
+
+	//Stacks may have been modified in place while the container was open.
+	@Inject(method = "onClose", at = @At("TAIL"))
+	private void onClose(PlayerEntity player, CallbackInfo info) {
+		((NonEmptySlotCount) (Object) this).markContentsChanged();
+	}
 }
@@ -24,10 +24,14 @@
 package com.therandomlabs.vanilladeathchest.mixin;
 
 import java.util.List;
+import java.util.Set;
 
 import com.therandomlabs.vanilladeathchest.deathchest.DeathChest;
 import com.therandomlabs.vanilladeathchest.world.DeathChestsState;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
 import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockBox;
 import net.minecraft.util.math.BlockPos;
 import net.minecraft.world.World;
 import net.minecraft.world.explosion.Explosion;
@@ -49,10 +53,50 @@ public abstract class ExplosionMixin {
 
 	@Inject(method = "collectBlocksAndDamageEntities", at = @At("TAIL"))
 	private void collectBlocksAndDamageEntities(CallbackInfo info) {
-		final DeathChestsState deathChestsState = DeathChestsState.get((ServerWorld) world);
-		getAffectedBlocks().removeIf(pos -> {
-			final DeathChest deathChest = deathChestsState.getExistingDeathChest(pos);
-			return deathChest != null && deathChest.isLocked();
-		});
+		final List<BlockPos> affectedBlocks = getAffectedBlocks();
+
+		if (affectedBlocks.isEmpty()) {
+			return;
+		}
+
+		int minX = Integer.MAX_VALUE;
+		int minY = Integer.MAX_VALUE;
+		int minZ = Integer.MAX_VALUE;
+		int maxX = Integer.MIN_VALUE;
+		int maxY = Integer.MIN_VALUE;
+		int maxZ = Integer.MIN_VALUE;
+
+		for (BlockPos pos : affectedBlocks) {
+			minX = Math.min(minX, pos.getX());
+			minY = Math.min(minY, pos.getY());
+			minZ = Math.min(minZ, pos.getZ());
+			maxX = Math.max(maxX, pos.getX());
+			maxY = Math.max(maxY, pos.getY());
+			maxZ = Math.max(maxZ, pos.getZ());
+		}
+
+		final Set<DeathChest> deathChests = DeathChestsState.get((ServerWorld) world).
+				getExistingDeathChests(new BlockBox(minX, minY, minZ, maxX, maxY, maxZ));
+
+		//Most explosions are nowhere near a death chest.
+		if (deathChests.isEmpty()) {
+			return;
+		}
+
+		final LongSet protectedBlocks = new LongOpenHashSet();
+
+		for (DeathChest deathChest : deathChests) {
+			if (deathChest.isLocked()) {
+				protectedBlocks.add(deathChest.getPos().asLong());
+
+				if (deathChest.isDoubleChest()) {
+					protectedBlocks.add(deathChest.getPos().east().asLong());
+				}
+			}
+		}
+
+		if (!protectedBlocks.isEmpty()) {
+			affectedBlocks.removeIf(pos -> protectedBlocks.contains(pos.asLong()));
+		}
 	}
 }
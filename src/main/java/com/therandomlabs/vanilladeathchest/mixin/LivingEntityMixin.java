@@ -30,17 +30,17 @@ import java.util.UUID;
 import com.therandomlabs.vanilladeathchest.VDCConfig;
 import com.therandomlabs.vanilladeathchest.VanillaDeathChest;
 import com.therandomlabs.vanilladeathchest.deathchest.DeathChest;
+import com.therandomlabs.vanilladeathchest.deathchest.DeathChestInventory;
+import com.therandomlabs.vanilladeathchest.deathchest.DeathChestItem;
 import com.therandomlabs.vanilladeathchest.util.DeathChestDefenseEntity;
 import com.therandomlabs.vanilladeathchest.util.DropsList;
 import com.therandomlabs.vanilladeathchest.world.DeathChestsState;
-import net.minecraft.entity.Entity;
 import net.minecraft.entity.ItemEntity;
 import net.minecraft.entity.LivingEntity;
 import net.minecraft.entity.damage.DamageSource;
 import net.minecraft.entity.mob.Angerable;
 import net.minecraft.entity.mob.MobEntity;
 import net.minecraft.entity.player.PlayerEntity;
-import net.minecraft.entity.player.PlayerInventory;
 import net.minecraft.nbt.CompoundTag;
 import net.minecraft.nbt.NbtHelper;
 import net.minecraft.server.world.ServerWorld;
@@ -58,7 +58,7 @@ public abstract class LivingEntityMixin implements DropsList, DeathChestDefenseE
 	private final List<ItemEntity> drops = new ArrayList<>();
 
 	@Unique
-	private PlayerInventory inventory;
+	private DeathChestInventory inventory;
 
 	@Unique
 	private DeathChest deathChest;
@@ -87,14 +87,7 @@ public abstract class LivingEntityMixin implements DropsList, DeathChestDefenseE
 	public void dropHead(CallbackInfo info) {
 		if ((Object) this instanceof PlayerEntity) {
 			drops.clear();
-			//We can't pass in null here because Campanion mixins into setStack and needs the
-			//player.
-			inventory = new PlayerInventory((PlayerEntity) (Object) this);
-			final PlayerInventory oldInventory = ((PlayerEntity) (Object) this).inventory;
-
-			for (int i = 0; i < oldInventory.size(); i++) {
-				inventory.setStack(i, oldInventory.getStack(i).copy());
-			}
+			inventory = DeathChestInventory.of(((PlayerEntity) (Object) this).inventory);
 		}
 	}
 
@@ -113,15 +106,22 @@ public abstract class LivingEntityMixin implements DropsList, DeathChestDefenseE
 			return;
 		}
 
-		drops.forEach(Entity::remove);
+		final List<DeathChestItem> items = new ArrayList<>(drops.size());
+
+		for (ItemEntity drop : drops) {
+			items.add(DeathChestItem.of(drop));
+			drop.remove();
+		}
+
+		drops.clear();
+
 		final DeathChestsState deathChestsState = DeathChestsState.get(world);
 		final BlockPos pos = entity.getBlockPos();
 		final DeathChest deathChest = new DeathChest(
-				UUID.randomUUID(), world, entity.getUuid(), drops, inventory, world.getTime(), pos,
+				UUID.randomUUID(), world, entity.getUuid(), items, inventory, world.getTime(), pos,
 				false, true
 		);
-		deathChestsState.getQueuedDeathChests().add(deathChest);
-		deathChestsState.markDirty();
+		deathChestsState.queueDeathChest(deathChest);
 
 		VanillaDeathChest.logger.info(
 				"Death chest for {} queued at [{}, {}, {}] with identifier {}",
@@ -47,6 +47,17 @@ public final class LockableContainerBlockEntityMixin implements DeathChestBlockE
 	@Unique
 	private DeathChest deathChest;
 
+	//The state that deathChest was looked up in and its generation at the time, so that the
+	//cached result, including a null one, can be validated with two field reads.
+	@Unique
+	private DeathChestsState deathChestsState;
+
+	@Unique
+	private int deathChestsGeneration;
+
+	@Unique
+	private boolean unloaded;
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -57,21 +68,37 @@ public final class LockableContainerBlockEntityMixin implements DeathChestBlockE
 			return null;
 		}
 
-		if (deathChest != null) {
+		if (deathChestsState != null &&
+				deathChestsGeneration == deathChestsState.getExistingDeathChestsGeneration()) {
 			return deathChest;
 		}
 
 		final BlockEntity blockEntity = (BlockEntity) (Object) this;
-		final ServerWorld world = (ServerWorld) blockEntity.getWorld();
 
-		if (world == null) {
-			return null;
+		if (deathChestsState == null) {
+			final ServerWorld world = (ServerWorld) blockEntity.getWorld();
+
+			if (world == null) {
+				return null;
+			}
+
+			deathChestsState = DeathChestsState.get(world);
 		}
 
-		deathChest = DeathChestsState.get(world).getExistingDeathChest(blockEntity.getPos());
+		deathChest = deathChestsState.getExistingDeathChest(blockEntity.getPos());
+		//The lookup may load a region, so the generation is read afterwards.
+		deathChestsGeneration = deathChestsState.getExistingDeathChestsGeneration();
 		return deathChest;
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isDeathChest() {
+		return isDeathChest;
+	}
+
 	/**
 	 * {@inheritDoc}
 	 */
@@ -80,6 +107,22 @@ public final class LockableContainerBlockEntityMixin implements DeathChestBlockE
 		isDeathChest = true;
 	}
 
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public boolean isUnloaded() {
+		return unloaded;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void markUnloaded() {
+		unloaded = true;
+	}
+
 	@Inject(method = "fromTag", at = @At("TAIL"))
 	private void fromTag(BlockState state, CompoundTag tag, CallbackInfo info) {
 		isDeathChest = tag.getBoolean("IsDeathChest");
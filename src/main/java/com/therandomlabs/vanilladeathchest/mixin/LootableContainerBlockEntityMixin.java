@@ -0,0 +1,118 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2021 TheRandomLabs
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.therandomlabs.vanilladeathchest.mixin;
+
+import com.therandomlabs.vanilladeathchest.deathchest.DeathChest;
+import com.therandomlabs.vanilladeathchest.util.DeathChestBlockEntity;
+import com.therandomlabs.vanilladeathchest.util.NonEmptySlotCount;
+import com.therandomlabs.vanilladeathchest.world.DeathChestsState;
+import net.minecraft.block.entity.BlockEntity;
+import net.minecraft.block.entity.LootableContainerBlockEntity;
+import net.minecraft.item.ItemStack;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.server.world.ServerWorld;
+import org.spongepowered.asm.mixin.Mixin;
+import org.spongepowered.asm.mixin.Unique;
+import org.spongepowered.asm.mixin.injection.At;
+import org.spongepowered.asm.mixin.injection.Inject;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfo;
+import org.spongepowered.asm.mixin.injection.callback.CallbackInfoReturnable;
+
+@Mixin(LootableContainerBlockEntity.class)
+public final class LootableContainerBlockEntityMixin implements NonEmptySlotCount {
+	//-1 if the contents have changed since the slots were last counted.
+	//This is only cached for death chests.
+	@Unique
+	private int nonEmptySlotCount = -1;
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int getNonEmptySlotCount() {
+		if (nonEmptySlotCount != -1) {
+			return nonEmptySlotCount;
+		}
+
+		final LootableContainerBlockEntity container =
+				(LootableContainerBlockEntity) (Object) this;
+		int count = 0;
+
+		for (int i = 0; i < container.size(); i++) {
+			if (!container.getStack(i).isEmpty()) {
+				count++;
+			}
+		}
+
+		if (((DeathChestBlockEntity) (Object) this).isDeathChest()) {
+			nonEmptySlotCount = count;
+		}
+
+		return count;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public void markContentsChanged() {
+		nonEmptySlotCount = -1;
+
+		if (((DeathChestBlockEntity) (Object) this).isDeathChest()) {
+			notifyDeathChestsState();
+		}
+	}
+
+	//Unlike setStack and the other removeStack, this does not mark the container dirty.
+	@Inject(method = "removeStack(I)Lnet/minecraft/item/ItemStack;", at = @At("RETURN"))
+	private void removeStack(int slot, CallbackInfoReturnable<ItemStack> info) {
+		markContentsChanged();
+	}
+
+	@Inject(method = "clear", at = @At("TAIL"))
+	private void clear(CallbackInfo info) {
+		markContentsChanged();
+	}
+
+	//Chests, shulker boxes and other lootable containers all call this before they read their
+	//items, so the count is discarded here.
+	@Inject(method = "deserializeLootTable", at = @At("HEAD"))
+	private void deserializeLootTable(CompoundTag tag, CallbackInfoReturnable<Boolean> info) {
+		nonEmptySlotCount = -1;
+	}
+
+	@Unique
+	private void notifyDeathChestsState() {
+		//Death chest block entities are also marked on the client.
+		if (!(((BlockEntity) (Object) this).getWorld() instanceof ServerWorld)) {
+			return;
+		}
+
+		final DeathChest deathChest = ((DeathChestBlockEntity) (Object) this).getDeathChest();
+
+		if (deathChest != null) {
+			DeathChestsState.get(deathChest.getWorld()).onContentsChanged(deathChest);
+		}
+	}
+}
@@ -23,15 +23,19 @@
 
 package com.therandomlabs.vanilladeathchest.mixin;
 
-import java.util.List;
+import java.io.File;
+import java.util.Map;
 
-import net.minecraft.block.entity.BlockEntity;
-import net.minecraft.world.World;
+import net.minecraft.world.PersistentState;
+import net.minecraft.world.PersistentStateManager;
 import org.spongepowered.asm.mixin.Mixin;
 import org.spongepowered.asm.mixin.gen.Accessor;
 
-@Mixin(World.class)
-public interface WorldAccessor {
+@Mixin(PersistentStateManager.class)
+public interface PersistentStateManagerAccessor {
 	@Accessor
-	List<BlockEntity> getUnloadedBlockEntities();
+	File getDirectory();
+
+	@Accessor
+	Map<String, PersistentState> getLoadedStates();
 }
@@ -39,8 +39,28 @@ public interface DeathChestBlockEntity {
 	@Nullable
 	DeathChest getDeathChest();
 
+	/**
+	 * Returns whether this block entity has been marked as a death chest.
+	 *
+	 * @return {@code true} if this block entity is a death chest, or otherwise {@code false}.
+	 */
+	boolean isDeathChest();
+
 	/**
 	 * Marks this block entity as a death chest.
 	 */
 	void markAsDeathChest();
+
+	/**
+	 * Returns whether this block entity has been unloaded along with its chunk, as opposed to
+	 * being removed.
+	 *
+	 * @return {@code true} if this block entity has been unloaded, or otherwise {@code false}.
+	 */
+	boolean isUnloaded();
+
+	/**
+	 * Marks this block entity as having been unloaded along with its chunk.
+	 */
+	void markUnloaded();
 }
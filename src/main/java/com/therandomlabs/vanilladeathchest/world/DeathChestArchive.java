@@ -0,0 +1,320 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2021 TheRandomLabs
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.therandomlabs.vanilladeathchest.world;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.NbtHelper;
+import net.minecraft.nbt.NbtIo;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * An append-only on-disk archive of death chests that no longer exist in the world.
+ * Archived death chests are kept out of memory; only a small index of identifiers, players and
+ * file offsets is loaded, and only when an archived death chest is first looked up.
+ * <p>
+ * The archive consists of a data file containing the serialized death chests one after
+ * another, and an index file containing a fixed-size entry for each of them.
+ */
+final class DeathChestArchive {
+	//Identifier, player UUID and data file offset.
+	private static final int INDEX_ENTRY_SIZE = Long.BYTES * 5;
+	//Index entries with this offset mark death chests that have been removed from the archive.
+	private static final long REMOVED_OFFSET = -1L;
+	private static final String REMOVED_KEY = "RemovedFromArchive";
+
+	private final File dataFile;
+	private final File indexFile;
+	//Death chests are only removed from here once they have been written, so anything that is
+	//not found here is already in the index.
+	private final Queue<CompoundTag> pendingDeathChests = new ConcurrentLinkedQueue<>();
+	private final Map<UUID, Long> offsets = new HashMap<>();
+	private final Map<UUID, Set<UUID>> playerDeathChests = new HashMap<>();
+	private long readIndexLength;
+
+	/**
+	 * Constructs a {@link DeathChestArchive} that stores its files in the specified directory.
+	 *
+	 * @param dataDirectory the world data directory.
+	 * @param id the persistent state ID.
+	 */
+	DeathChestArchive(File dataDirectory, String id) {
+		dataFile = new File(dataDirectory, id + ".archive");
+		indexFile = new File(dataDirectory, id + ".archive.idx");
+	}
+
+	/**
+	 * Buffers the specified death chest to be appended to the archive by {@link #write()}.
+	 *
+	 * @param deathChestTag a serialized death chest that is not modified afterwards.
+	 */
+	void add(CompoundTag deathChestTag) {
+		pendingDeathChests.add(deathChestTag);
+	}
+
+	/**
+	 * Buffers the removal of the specified death chest from the archive by {@link #write()},
+	 * e.g. because it has been placed again.
+	 *
+	 * @param identifier a death chest identifier.
+	 * @param playerUUID the UUID of the player that the death chest belongs to.
+	 */
+	void remove(UUID identifier, UUID playerUUID) {
+		final CompoundTag tag = new CompoundTag();
+		tag.put("Identifier", NbtHelper.fromUuid(identifier));
+		tag.put("PlayerUUID", NbtHelper.fromUuid(playerUUID));
+		tag.putBoolean(REMOVED_KEY, true);
+		pendingDeathChests.add(tag);
+	}
+
+	/**
+	 * Appends all buffered death chests to the archive.
+	 * This should only be called on the death chest I/O thread.
+	 * If an I/O error occurs, the death chests remain buffered so that they are not lost.
+	 *
+	 * @throws IOException if an I/O error occurs.
+	 */
+	void write() throws IOException {
+		//Death chests are only ever added to the tail, so these are the first ones in the queue.
+		final List<CompoundTag> deathChests = new ArrayList<>(pendingDeathChests);
+
+		if (deathChests.isEmpty()) {
+			return;
+		}
+
+		append(deathChests);
+
+		for (int i = 0; i < deathChests.size(); i++) {
+			pendingDeathChests.poll();
+		}
+	}
+
+	/**
+	 * Reads the archived death chest with the specified identifier.
+	 * This should only be called on the server thread.
+	 * Death chests that have yet to be written are read from memory, so this does not wait for
+	 * any pending I/O.
+	 *
+	 * @param identifier a death chest identifier.
+	 * @return the serialized death chest, or {@code null} if it has not been archived.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	@Nullable
+	CompoundTag read(UUID identifier) throws IOException {
+		CompoundTag pending = null;
+
+		for (CompoundTag deathChestTag : pendingDeathChests) {
+			if (identifier.equals(NbtHelper.toUuid(deathChestTag.get("Identifier")))) {
+				pending = deathChestTag;
+			}
+		}
+
+		if (pending != null) {
+			return pending.getBoolean(REMOVED_KEY) ? null : pending;
+		}
+
+		updateIndex();
+		final Long offset = offsets.get(identifier);
+
+		if (offset == null) {
+			return null;
+		}
+
+		try (FileInputStream stream = new FileInputStream(dataFile)) {
+			stream.getChannel().position(offset);
+			return NbtIo.read(new DataInputStream(new BufferedInputStream(stream)));
+		}
+	}
+
+	/**
+	 * Returns the identifiers of the archived death chests that belong to the specified player.
+	 * This should only be called on the server thread.
+	 * Death chests that have yet to be written are read from memory, so this does not wait for
+	 * any pending I/O.
+	 *
+	 * @param playerUUID a player UUID.
+	 * @return an unmodifiable {@link Set} of death chest identifiers.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	Set<UUID> getIdentifiers(UUID playerUUID) throws IOException {
+		final List<CompoundTag> pending = new ArrayList<>();
+
+		for (CompoundTag deathChestTag : pendingDeathChests) {
+			if (playerUUID.equals(NbtHelper.toUuid(deathChestTag.get("PlayerUUID")))) {
+				pending.add(deathChestTag);
+			}
+		}
+
+		//The pending death chests are read first, as they are only removed once they are in
+		//the index.
+		updateIndex();
+		final Set<UUID> identifiers = playerDeathChests.get(playerUUID);
+
+		if (pending.isEmpty()) {
+			return identifiers == null ?
+					Collections.emptySet() : Collections.unmodifiableSet(identifiers);
+		}
+
+		final Set<UUID> result =
+				identifiers == null ? new HashSet<>() : new HashSet<>(identifiers);
+		applyPending(result, pending);
+		return Collections.unmodifiableSet(result);
+	}
+
+	/**
+	 * Returns the identifiers of all archived death chests.
+	 * This should only be called on the server thread.
+	 * Death chests that have yet to be written are read from memory, so this does not wait for
+	 * any pending I/O.
+	 *
+	 * @return an unmodifiable {@link Set} of death chest identifiers.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	Set<UUID> getIdentifiers() throws IOException {
+		final List<CompoundTag> pending = new ArrayList<>(pendingDeathChests);
+		updateIndex();
+
+		if (pending.isEmpty()) {
+			return Collections.unmodifiableSet(offsets.keySet());
+		}
+
+		final Set<UUID> result = new HashSet<>(offsets.keySet());
+		applyPending(result, pending);
+		return Collections.unmodifiableSet(result);
+	}
+
+	private static void applyPending(Set<UUID> identifiers, List<CompoundTag> pending) {
+		for (CompoundTag deathChestTag : pending) {
+			final UUID identifier = NbtHelper.toUuid(deathChestTag.get("Identifier"));
+
+			if (deathChestTag.getBoolean(REMOVED_KEY)) {
+				identifiers.remove(identifier);
+			} else {
+				identifiers.add(identifier);
+			}
+		}
+	}
+
+	private void append(List<CompoundTag> deathChests) throws IOException {
+		final long dataOffset = dataFile.length();
+		final ByteBuffer index = ByteBuffer.allocate(deathChests.size() * INDEX_ENTRY_SIZE);
+
+		try (DataOutputStream stream = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(dataFile, true))
+		)) {
+			for (CompoundTag deathChestTag : deathChests) {
+				final UUID identifier = NbtHelper.toUuid(deathChestTag.get("Identifier"));
+				final UUID playerUUID = NbtHelper.toUuid(deathChestTag.get("PlayerUUID"));
+				index.putLong(identifier.getMostSignificantBits());
+				index.putLong(identifier.getLeastSignificantBits());
+				index.putLong(playerUUID.getMostSignificantBits());
+				index.putLong(playerUUID.getLeastSignificantBits());
+
+				if (deathChestTag.getBoolean(REMOVED_KEY)) {
+					index.putLong(REMOVED_OFFSET);
+				} else {
+					index.putLong(dataOffset + stream.size());
+					NbtIo.write(deathChestTag, stream);
+				}
+			}
+		}
+
+		//The index is only written once the data it points to has been written.
+		try (RandomAccessFile file = new RandomAccessFile(indexFile, "rw")) {
+			//Any partially written entry is overwritten.
+			file.seek(file.length() / INDEX_ENTRY_SIZE * INDEX_ENTRY_SIZE);
+			file.write(index.array());
+		}
+	}
+
+	//Only reads index entries that have been completely written. The data they point to is
+	//always written before them.
+	private void updateIndex() throws IOException {
+		if (!indexFile.exists()) {
+			return;
+		}
+
+		final long length = indexFile.length() / INDEX_ENTRY_SIZE * INDEX_ENTRY_SIZE;
+
+		if (length <= readIndexLength) {
+			return;
+		}
+
+		try (FileInputStream fileStream = new FileInputStream(indexFile)) {
+			fileStream.getChannel().position(readIndexLength);
+			final DataInputStream stream =
+					new DataInputStream(new BufferedInputStream(fileStream));
+
+			for (long i = readIndexLength; i < length; i += INDEX_ENTRY_SIZE) {
+				final UUID identifier = new UUID(stream.readLong(), stream.readLong());
+				final UUID playerUUID = new UUID(stream.readLong(), stream.readLong());
+				final long offset = stream.readLong();
+				Set<UUID> identifiers = playerDeathChests.get(playerUUID);
+
+				//Later entries replace earlier ones.
+				if (offset == REMOVED_OFFSET) {
+					offsets.remove(identifier);
+
+					if (identifiers != null && identifiers.remove(identifier) &&
+							identifiers.isEmpty()) {
+						playerDeathChests.remove(playerUUID);
+					}
+
+					continue;
+				}
+
+				offsets.put(identifier, offset);
+
+				if (identifiers == null) {
+					identifiers = new HashSet<>();
+					playerDeathChests.put(playerUUID, identifiers);
+				}
+
+				identifiers.add(identifier);
+			}
+		}
+
+		readIndexLength = length;
+	}
+}
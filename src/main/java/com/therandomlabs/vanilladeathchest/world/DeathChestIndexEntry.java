@@ -0,0 +1,120 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2021 TheRandomLabs
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.therandomlabs.vanilladeathchest.world;
+
+import java.util.UUID;
+
+import com.therandomlabs.vanilladeathchest.deathchest.DeathChest;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * An entry in the index of placed death chests that is kept by {@link DeathChestsState}.
+ * The index allows death chests to be found by identifier or owner without being loaded.
+ * Entries are ordered by creation time.
+ */
+final class DeathChestIndexEntry implements Comparable<DeathChestIndexEntry> {
+	private final UUID identifier;
+	@Nullable
+	private final UUID playerUUID;
+	private final long creationTime;
+	private final long region;
+
+	/**
+	 * Constructs a {@link DeathChestIndexEntry}.
+	 *
+	 * @param identifier a death chest identifier.
+	 * @param playerUUID the UUID of the player that owns the death chest, or {@code null} if it
+	 * is not known.
+	 * @param creationTime the creation time of the death chest.
+	 * @param region the packed position of the region that contains the death chest.
+	 */
+	DeathChestIndexEntry(
+			UUID identifier, @Nullable UUID playerUUID, long creationTime, long region
+	) {
+		this.identifier = identifier;
+		this.playerUUID = playerUUID;
+		this.creationTime = creationTime;
+		this.region = region;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	public int compareTo(DeathChestIndexEntry entry) {
+		final int result = Long.compare(creationTime, entry.creationTime);
+		return result == 0 ? identifier.compareTo(entry.identifier) : result;
+	}
+
+	/**
+	 * Returns the death chest identifier.
+	 *
+	 * @return the death chest identifier.
+	 */
+	UUID getIdentifier() {
+		return identifier;
+	}
+
+	/**
+	 * Returns the UUID of the player that owns the death chest.
+	 *
+	 * @return the UUID of the player that owns the death chest, or {@code null} if it is not
+	 * known.
+	 */
+	@Nullable
+	UUID getPlayerUUID() {
+		return playerUUID;
+	}
+
+	/**
+	 * Returns the creation time of the death chest.
+	 *
+	 * @return the creation time of the death chest.
+	 */
+	long getCreationTime() {
+		return creationTime;
+	}
+
+	/**
+	 * Returns the packed position of the region that contains the death chest.
+	 *
+	 * @return the packed region position.
+	 */
+	long getRegion() {
+		return region;
+	}
+
+	/**
+	 * Returns the index entry for the specified death chest.
+	 *
+	 * @param deathChest a {@link DeathChest}.
+	 * @return the {@link DeathChestIndexEntry}.
+	 */
+	static DeathChestIndexEntry of(DeathChest deathChest) {
+		return new DeathChestIndexEntry(
+				deathChest.getIdentifier(), deathChest.getPlayerUUID(),
+				deathChest.getCreationTime(), DeathChestShards.getRegion(deathChest.getPos())
+		);
+	}
+}
@@ -0,0 +1,351 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2021 TheRandomLabs
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.therandomlabs.vanilladeathchest.world;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import com.therandomlabs.vanilladeathchest.VanillaDeathChest;
+import com.therandomlabs.vanilladeathchest.deathchest.DeathChest;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongList;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import net.fabricmc.fabric.api.util.NbtType;
+import net.minecraft.SharedConstants;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.NbtHelper;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.nbt.Tag;
+import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+
+/**
+ * Handles the region shard files used by the {@code REGION_SHARDED} storage mode.
+ * Like vanilla region files, each shard covers 32x32 chunks and is named {@code r.X.Z.dat}.
+ * Shards use the same layout as the legacy {@code deathchests.dat} file.
+ */
+final class DeathChestShards {
+	private final File directory;
+	private final LongSet loadedRegions = new LongOpenHashSet();
+	//Shards that could not be read are never rewritten so that their death chests are not lost.
+	private final LongSet unreadableRegions = new LongOpenHashSet();
+	private final LongSet dirtyRegions = new LongOpenHashSet();
+	private boolean rewriteRequired;
+
+	/**
+	 * Constructs a {@link DeathChestShards} that stores shards in a subdirectory of the
+	 * specified directory.
+	 *
+	 * @param dataDirectory the world data directory.
+	 * @param id the persistent state ID.
+	 */
+	DeathChestShards(File dataDirectory, String id) {
+		directory = new File(dataDirectory, id);
+	}
+
+	/**
+	 * Forgets which regions have been loaded.
+	 */
+	void clear() {
+		loadedRegions.clear();
+		unreadableRegions.clear();
+	}
+
+	/**
+	 * Reads the specified region shard into the specified state if it has not already been read.
+	 *
+	 * @param state a {@link DeathChestsState}.
+	 * @param region a packed region position.
+	 */
+	void load(DeathChestsState state, long region) {
+		if (!loadedRegions.add(region) || !state.hasDeathChests(region)) {
+			return;
+		}
+
+		final File file = getFile(region);
+
+		if (!file.exists()) {
+			return;
+		}
+
+		try {
+			readDeathChests(state, NbtIo.readCompressed(file).getCompound("data"));
+		} catch (IOException ex) {
+			VanillaDeathChest.logger.error("Failed to load death chest shard: {}", file, ex);
+			unreadableRegions.add(region);
+		}
+	}
+
+	/**
+	 * Marks the specified region as changed so that its shard is rewritten on the next save.
+	 *
+	 * @param region a packed region position.
+	 */
+	void markDirty(long region) {
+		dirtyRegions.add(region);
+	}
+
+	/**
+	 * Causes every shard to be rewritten on the next save.
+	 */
+	void requireRewrite() {
+		rewriteRequired = true;
+	}
+
+	/**
+	 * Forgets which regions have changed.
+	 * This should be called when a save does not need to rewrite any shards.
+	 */
+	void clearDirtyRegions() {
+		dirtyRegions.clear();
+	}
+
+	/**
+	 * Collects the shards that need to be written or deleted.
+	 *
+	 * @param state a {@link DeathChestsState}.
+	 * @param rewriteAll whether every shard should be rewritten, e.g. because the death chests
+	 * are not yet stored in shards.
+	 * @return the {@link Changes}, which should be written on the death chest I/O thread.
+	 */
+	Changes collectChanges(DeathChestsState state, boolean rewriteAll) {
+		final boolean fullRewrite = rewriteAll || rewriteRequired;
+		rewriteRequired = false;
+
+		if (fullRewrite) {
+			state.loadAllRegions();
+			dirtyRegions.addAll(state.getRegions());
+		}
+
+		final Changes changes =
+				new Changes(fullRewrite, fullRewrite && unreadableRegions.isEmpty());
+		final LongIterator it = dirtyRegions.iterator();
+
+		while (it.hasNext()) {
+			final long region = it.nextLong();
+
+			if (!state.hasDeathChests(region)) {
+				changes.deletedRegions.add(region);
+				continue;
+			}
+
+			state.loadRegion(region);
+
+			if (!unreadableRegions.contains(region)) {
+				final CompoundTag tag = new CompoundTag();
+				writeDeathChests(state, tag, state.getRegionDeathChests(region));
+				changes.regionTags.put(region, tag);
+			}
+		}
+
+		dirtyRegions.clear();
+		return changes;
+	}
+
+	private File getFile(long region) {
+		final ChunkPos pos = new ChunkPos(region);
+		return new File(directory, "r." + pos.x + "." + pos.z + ".dat");
+	}
+
+	private void deleteFile(long region) {
+		final File file = getFile(region);
+
+		if (file.exists() && !file.delete()) {
+			VanillaDeathChest.logger.error("Failed to delete death chest shard: {}", file);
+		}
+	}
+
+	private void deleteAllFiles() {
+		final File[] files = directory.listFiles((dir, name) -> name.startsWith("r."));
+
+		if (files == null) {
+			return;
+		}
+
+		for (File file : files) {
+			if (!file.delete()) {
+				VanillaDeathChest.logger.error("Failed to delete death chest shard: {}", file);
+			}
+		}
+	}
+
+	/**
+	 * Reads the death chests in the specified shard or legacy data tag into the specified state.
+	 *
+	 * @param state a {@link DeathChestsState}.
+	 * @param tag a shard or legacy data tag.
+	 */
+	static void readDeathChests(DeathChestsState state, CompoundTag tag) {
+		final ServerWorld world = state.getWorld();
+		final Set<UUID> existing = new HashSet<>();
+
+		for (Tag identifierTag : tag.getList("ExistingDeathChests", NbtType.INT_ARRAY)) {
+			existing.add(NbtHelper.toUuid(identifierTag));
+		}
+
+		final List<DeathChest> decoded = DeathChestsSnapshot.decodeAll(
+				tag.getList("DeathChests", NbtType.COMPOUND),
+				deathChestTag -> DeathChest.fromTag(world, (CompoundTag) deathChestTag)
+		);
+
+		for (DeathChest deathChest : decoded) {
+			state.readDeathChest(deathChest, existing.contains(deathChest.getIdentifier()));
+		}
+	}
+
+	/**
+	 * Writes the specified death chests to the specified shard or legacy data tag.
+	 *
+	 * @param state the {@link DeathChestsState} that contains the death chests.
+	 * @param tag a shard or legacy data tag.
+	 * @param deathChests the death chests.
+	 */
+	static void writeDeathChests(
+			DeathChestsState state, CompoundTag tag, Collection<DeathChest> deathChests
+	) {
+		final ListTag deathChestsList = new ListTag();
+		final ListTag existingDeathChestsList = new ListTag();
+
+		for (DeathChest deathChest : deathChests) {
+			deathChestsList.add(deathChest.toSnapshotTag());
+
+			if (state.isExisting(deathChest)) {
+				existingDeathChestsList.add(NbtHelper.fromUuid(deathChest.getIdentifier()));
+			}
+		}
+
+		tag.put("DeathChests", deathChestsList);
+		tag.put("ExistingDeathChests", existingDeathChestsList);
+	}
+
+	/**
+	 * Returns the packed region position that contains the specified block position.
+	 *
+	 * @param pos a {@link BlockPos}.
+	 * @return the packed region position.
+	 */
+	static long getRegion(BlockPos pos) {
+		return getRegionOfBlock(pos.getX(), pos.getZ());
+	}
+
+	/**
+	 * Returns the packed region position that contains the specified block column.
+	 *
+	 * @param x a block X coordinate.
+	 * @param z a block Z coordinate.
+	 * @return the packed region position.
+	 */
+	static long getRegionOfBlock(int x, int z) {
+		return ChunkPos.toLong(x >> 9, z >> 9);
+	}
+
+	/**
+	 * Returns the packed region position that contains the specified chunk.
+	 *
+	 * @param chunkPos a {@link ChunkPos}.
+	 * @return the packed region position.
+	 */
+	static long getRegion(ChunkPos chunkPos) {
+		return getRegionOfChunk(chunkPos.x, chunkPos.z);
+	}
+
+	/**
+	 * Returns the packed region position that contains the specified chunk.
+	 *
+	 * @param chunkX a chunk X coordinate.
+	 * @param chunkZ a chunk Z coordinate.
+	 * @return the packed region position.
+	 */
+	static long getRegionOfChunk(int chunkX, int chunkZ) {
+		return ChunkPos.toLong(chunkX >> 5, chunkZ >> 5);
+	}
+
+	/**
+	 * The shards to be written or deleted by a save.
+	 */
+	final class Changes {
+		private final boolean fullRewrite;
+		private final boolean deleteAll;
+		private final LongList deletedRegions = new LongArrayList();
+		private final Long2ObjectMap<CompoundTag> regionTags = new Long2ObjectOpenHashMap<>();
+
+		private Changes(boolean fullRewrite, boolean deleteAll) {
+			this.fullRewrite = fullRewrite;
+			this.deleteAll = deleteAll;
+		}
+
+		/**
+		 * Returns whether every shard is rewritten.
+		 *
+		 * @return {@code true} if every shard is rewritten, or otherwise {@code false}.
+		 */
+		boolean isFullRewrite() {
+			return fullRewrite;
+		}
+
+		/**
+		 * Writes and deletes the shards.
+		 * This may be called on any thread.
+		 *
+		 * @throws IOException if an I/O error occurs.
+		 */
+		void write() throws IOException {
+			if (deleteAll) {
+				deleteAllFiles();
+			}
+
+			final LongIterator deleted = deletedRegions.iterator();
+
+			while (deleted.hasNext()) {
+				deleteFile(deleted.nextLong());
+			}
+
+			if (regionTags.isEmpty()) {
+				return;
+			}
+
+			if (!directory.isDirectory() && !directory.mkdirs()) {
+				throw new IOException("Failed to create directory: " + directory);
+			}
+
+			for (Long2ObjectMap.Entry<CompoundTag> entry : regionTags.long2ObjectEntrySet()) {
+				final CompoundTag tag = new CompoundTag();
+				tag.put("data", entry.getValue());
+				tag.putInt("DataVersion", SharedConstants.getGameVersion().getWorldVersion());
+				NbtIo.writeCompressed(tag, getFile(entry.getLongKey()));
+			}
+		}
+	}
+}
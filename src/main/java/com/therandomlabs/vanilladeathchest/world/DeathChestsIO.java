@@ -0,0 +1,93 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2021 TheRandomLabs
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.therandomlabs.vanilladeathchest.world;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+import com.therandomlabs.vanilladeathchest.VanillaDeathChest;
+import net.minecraft.server.MinecraftServer;
+
+/**
+ * Performs death chest file I/O on a background thread so that saving does not stall the
+ * server thread.
+ */
+public final class DeathChestsIO {
+	private static final ExecutorService executor = Executors.newSingleThreadExecutor(task -> {
+		final Thread thread = new Thread(task, "VanillaDeathChest I/O");
+		thread.setDaemon(true);
+		return thread;
+	});
+
+	private DeathChestsIO() {}
+
+	/**
+	 * Submits a task to be run on the I/O thread.
+	 * Tasks are run one at a time in the order in which they are submitted.
+	 *
+	 * @param task a task.
+	 */
+	static void submit(Runnable task) {
+		executor.execute(task);
+	}
+
+	/**
+	 * Submits a task that computes a result to be run on the I/O thread.
+	 * Tasks are run one at a time in the order in which they are submitted, so the result
+	 * reflects every write that was submitted before it.
+	 *
+	 * @param task a task.
+	 * @param <T> the type of the result.
+	 * @return a {@link CompletableFuture} that is completed with the result.
+	 */
+	static <T> CompletableFuture<T> supply(Supplier<T> task) {
+		return CompletableFuture.supplyAsync(task, executor);
+	}
+
+	/**
+	 * Blocks until all submitted tasks have been run.
+	 */
+	public static void flush() {
+		try {
+			executor.submit(() -> {}).get();
+		} catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException ex) {
+			VanillaDeathChest.logger.error("Failed to flush death chest I/O", ex);
+		}
+	}
+
+	/**
+	 * Called when a server stops.
+	 * This ensures that all death chest data has been written before the server is closed.
+	 *
+	 * @param server a {@link MinecraftServer}.
+	 */
+	public static void onServerStopped(MinecraftServer server) {
+		flush();
+	}
+}
@@ -0,0 +1,272 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2021 TheRandomLabs
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.therandomlabs.vanilladeathchest.world;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Consumer;
+
+import com.therandomlabs.vanilladeathchest.VanillaDeathChest;
+import com.therandomlabs.vanilladeathchest.deathchest.DeathChest;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.NbtHelper;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.server.world.ServerWorld;
+
+/**
+ * An append-only journal of changes to a {@link DeathChestsState}.
+ * Records are buffered in memory until the state is saved, at which point they are either
+ * appended to the journal file or discarded because the state has been compacted into a
+ * full snapshot.
+ */
+final class DeathChestsJournal {
+	static final String ADD = "Add";
+	static final String QUEUE = "Queue";
+	static final String DEQUEUE = "Dequeue";
+	static final String LOCK = "Lock";
+	static final String REMOVE = "Remove";
+
+	private final File file;
+	private final List<CompoundTag> pendingRecords = new ArrayList<>();
+	private int writtenRecords;
+	private boolean requiresCompaction;
+	private boolean replaying;
+
+	/**
+	 * Constructs a {@link DeathChestsJournal}.
+	 *
+	 * @param dataDirectory the world data directory.
+	 * @param id the persistent state ID.
+	 */
+	DeathChestsJournal(File dataDirectory, String id) {
+		file = new File(dataDirectory, id + ".journal");
+	}
+
+	/**
+	 * Buffers a record that contains the specified death chest.
+	 *
+	 * @param type the record type.
+	 * @param deathChest a {@link DeathChest}.
+	 */
+	void record(String type, DeathChest deathChest) {
+		final CompoundTag record = new CompoundTag();
+		record.put("DeathChest", deathChest.toTag(new CompoundTag()));
+		record(type, record);
+	}
+
+	/**
+	 * Buffers a record that contains the specified death chest identifier.
+	 *
+	 * @param type the record type.
+	 * @param identifier a death chest identifier.
+	 */
+	void record(String type, UUID identifier) {
+		final CompoundTag record = new CompoundTag();
+		record.put("Identifier", NbtHelper.fromUuid(identifier));
+		record(type, record);
+	}
+
+	/**
+	 * Buffers a record of the lock state of the specified death chest.
+	 *
+	 * @param deathChest a {@link DeathChest}.
+	 */
+	void recordLock(DeathChest deathChest) {
+		final CompoundTag record = new CompoundTag();
+		record.put("Identifier", NbtHelper.fromUuid(deathChest.getIdentifier()));
+		record.putBoolean("Locked", deathChest.isLocked());
+		record(LOCK, record);
+	}
+
+	/**
+	 * Returns whether the journal should be compacted rather than appended to.
+	 *
+	 * @param threshold the maximum number of records in the journal file.
+	 * @return {@code true} if the journal should be compacted, or otherwise {@code false}.
+	 */
+	boolean shouldCompact(int threshold) {
+		return requiresCompaction || writtenRecords + pendingRecords.size() >= threshold;
+	}
+
+	/**
+	 * Causes the journal to be compacted on the next save.
+	 */
+	void requireCompaction() {
+		requiresCompaction = true;
+	}
+
+	/**
+	 * Discards all buffered records.
+	 * This should be called when a full snapshot is saved.
+	 */
+	void reset() {
+		pendingRecords.clear();
+		writtenRecords = 0;
+		requiresCompaction = false;
+	}
+
+	/**
+	 * Returns whether the journal is being replayed.
+	 *
+	 * @return {@code true} if the journal is being replayed, or otherwise {@code false}.
+	 */
+	boolean isReplaying() {
+		return replaying;
+	}
+
+	/**
+	 * Applies all records in the journal file to the specified state.
+	 *
+	 * @param state a {@link DeathChestsState}.
+	 */
+	void replay(DeathChestsState state) {
+		replay(record -> apply(state, record));
+	}
+
+	/**
+	 * Passes all records in the journal file to the specified {@link Consumer}.
+	 *
+	 * @param consumer the {@link Consumer} that applies each record.
+	 */
+	void replay(Consumer<CompoundTag> consumer) {
+		if (!file.exists()) {
+			return;
+		}
+
+		replaying = true;
+
+		try (DataInputStream stream = new DataInputStream(
+				new BufferedInputStream(new FileInputStream(file))
+		)) {
+			while (stream.available() > 0) {
+				consumer.accept(NbtIo.read(stream));
+				writtenRecords++;
+			}
+		} catch (IOException ex) {
+			VanillaDeathChest.logger.error(
+					"Failed to read death chest journal after {} records", writtenRecords, ex
+			);
+			requiresCompaction = true;
+		} finally {
+			replaying = false;
+		}
+	}
+
+	/**
+	 * Appends all buffered records to the journal file on the death chest I/O thread.
+	 *
+	 * @param archive the {@link DeathChestArchive}, which is written first.
+	 * @param onFailure called on the I/O thread if the records could not be appended.
+	 */
+	void save(DeathChestArchive archive, Runnable onFailure) {
+		final List<CompoundTag> records = new ArrayList<>(pendingRecords);
+		writtenRecords += records.size();
+		pendingRecords.clear();
+
+		DeathChestsIO.submit(() -> {
+			try {
+				archive.write();
+				append(records);
+			} catch (IOException ex) {
+				VanillaDeathChest.logger.error("Failed to append to death chest journal", ex);
+				onFailure.run();
+			}
+		});
+	}
+
+	/**
+	 * Deletes the journal file if it exists.
+	 * This may be called on any thread.
+	 *
+	 * @throws IOException if the journal file could not be deleted.
+	 */
+	void delete() throws IOException {
+		if (file.exists() && !file.delete()) {
+			throw new IOException("Failed to delete death chest journal: " + file);
+		}
+	}
+
+	private void record(String type, CompoundTag record) {
+		record.putString("Type", type);
+		pendingRecords.add(record);
+	}
+
+	private void append(List<CompoundTag> records) throws IOException {
+		try (DataOutputStream stream = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(file, true))
+		)) {
+			for (CompoundTag record : records) {
+				NbtIo.write(record, stream);
+			}
+		}
+	}
+
+	private static void apply(DeathChestsState state, CompoundTag record) {
+		final ServerWorld world = state.getWorld();
+		final String type = record.getString("Type");
+
+		if (ADD.equals(type)) {
+			state.addDeathChest(DeathChest.fromTag(world, record.getCompound("DeathChest")));
+			return;
+		}
+
+		if (QUEUE.equals(type)) {
+			final DeathChest deathChest =
+					DeathChest.fromTag(world, record.getCompound("DeathChest"));
+			state.removeQueuedDeathChest(deathChest.getIdentifier());
+			state.readQueuedDeathChest(deathChest);
+			return;
+		}
+
+		final UUID identifier = NbtHelper.toUuid(record.get("Identifier"));
+
+		if (DEQUEUE.equals(type)) {
+			state.removeQueuedDeathChest(identifier);
+			return;
+		}
+
+		final DeathChest deathChest = state.getDeathChest(identifier);
+
+		if (REMOVE.equals(type)) {
+			if (deathChest != null) {
+				state.removeExistingDeathChest(deathChest);
+			}
+		} else if (LOCK.equals(type)) {
+			if (deathChest != null) {
+				deathChest.restoreLocked(record.getBoolean("Locked"));
+			}
+		} else {
+			VanillaDeathChest.logger.warn("Unknown death chest journal record: {}", type);
+		}
+	}
+}
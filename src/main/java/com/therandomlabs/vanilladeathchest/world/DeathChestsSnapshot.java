@@ -0,0 +1,445 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2021 TheRandomLabs
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.therandomlabs.vanilladeathchest.world;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import com.therandomlabs.vanilladeathchest.deathchest.DeathChest;
+import net.minecraft.SharedConstants;
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.server.world.ServerWorld;
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * A snapshot of a {@link DeathChestsState} in the versioned binary format used by
+ * {@code deathchests.vdc}.
+ * <p>
+ * The file starts with a magic number and a format version, followed by a deflated stream
+ * containing the data version, whether the death chests are stored in region shards, the
+ * death chest index, the placed death chests and the queued death chests.
+ * Death chests are stored as length-prefixed binary records (see {@link DeathChest#toRecord})
+ * so that the file can be read in a single streaming pass without building a tag tree.
+ */
+final class DeathChestsSnapshot {
+	private static final int MAGIC = 0x56444353;
+	//Version 2 adds the owner and creation time of each death chest to the index.
+	private static final int FORMAT_VERSION = 2;
+	//Below this, splitting the work across threads costs more than it saves.
+	private static final int PARALLEL_DECODE_THRESHOLD = 64;
+
+	private final boolean sharded;
+	private final List<DeathChestIndexEntry> index;
+	private final List<Entry> deathChests;
+	private final List<Entry> queuedDeathChests;
+
+	/**
+	 * Constructs a {@link DeathChestsSnapshot}.
+	 *
+	 * @param sharded whether the placed death chests are stored in region shards rather than
+	 * in this snapshot.
+	 * @param index the death chest index. This is only used if {@code sharded} is {@code true}.
+	 * @param deathChests the placed death chests.
+	 * @param queuedDeathChests the queued death chests.
+	 */
+	DeathChestsSnapshot(
+			boolean sharded, List<DeathChestIndexEntry> index, List<Entry> deathChests,
+			List<Entry> queuedDeathChests
+	) {
+		this.sharded = sharded;
+		this.index = index;
+		this.deathChests = deathChests;
+		this.queuedDeathChests = queuedDeathChests;
+	}
+
+	/**
+	 * Returns whether the placed death chests are stored in region shards.
+	 *
+	 * @return {@code true} if the placed death chests are stored in region shards,
+	 * or otherwise {@code false}.
+	 */
+	boolean isSharded() {
+		return sharded;
+	}
+
+	/**
+	 * Returns the death chest index.
+	 *
+	 * @return a {@link List} of {@link DeathChestIndexEntry} instances.
+	 */
+	List<DeathChestIndexEntry> getIndex() {
+		return index;
+	}
+
+	/**
+	 * Returns the placed death chests.
+	 *
+	 * @return a {@link List} of {@link Entry} instances.
+	 */
+	List<Entry> getDeathChests() {
+		return deathChests;
+	}
+
+	/**
+	 * Returns the queued death chests.
+	 *
+	 * @return a {@link List} of {@link Entry} instances.
+	 */
+	List<Entry> getQueuedDeathChests() {
+		return queuedDeathChests;
+	}
+
+	/**
+	 * Decodes the death chests in this snapshot and adds them to the specified state.
+	 *
+	 * @param state a {@link DeathChestsState}.
+	 */
+	void readInto(DeathChestsState state) {
+		final ServerWorld world = state.getWorld();
+
+		for (DeathChestIndexEntry entry : index) {
+			state.index(entry);
+		}
+
+		final List<DeathChest> decoded =
+				decodeAll(deathChests, entry -> DeathChest.fromRecord(world, entry.getRecord()));
+
+		for (int i = 0; i < decoded.size(); i++) {
+			state.readDeathChest(decoded.get(i), deathChests.get(i).exists());
+		}
+
+		for (DeathChest deathChest : decodeAll(
+				queuedDeathChests, entry -> DeathChest.fromRecord(world, entry.getRecord())
+		)) {
+			state.readQueuedDeathChest(deathChest);
+		}
+	}
+
+	/**
+	 * Writes this snapshot to the specified file.
+	 * The file is replaced atomically so that a failed write never leaves a partial snapshot.
+	 * This may be called on any thread.
+	 *
+	 * @param file a file.
+	 * @throws IOException if an I/O error occurs.
+	 */
+	void write(File file) throws IOException {
+		final File temporaryFile = new File(file.getPath() + ".tmp");
+		final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+
+		try (DataOutputStream stream = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(temporaryFile))
+		)) {
+			stream.writeInt(MAGIC);
+			stream.writeInt(FORMAT_VERSION);
+
+			final DeflaterOutputStream deflaterStream = new DeflaterOutputStream(stream, deflater);
+			final DataOutputStream deflated =
+					new DataOutputStream(new BufferedOutputStream(deflaterStream));
+			deflated.writeInt(SharedConstants.getGameVersion().getWorldVersion());
+			deflated.writeBoolean(sharded);
+			deflated.writeInt(sharded ? index.size() : 0);
+
+			if (sharded) {
+				for (DeathChestIndexEntry entry : index) {
+					writeIndexEntry(deflated, entry);
+				}
+			}
+
+			deflated.writeInt(deathChests.size());
+
+			for (Entry entry : deathChests) {
+				writeRecord(deflated, entry.encode());
+				deflated.writeBoolean(entry.exists());
+			}
+
+			deflated.writeInt(queuedDeathChests.size());
+
+			for (Entry entry : queuedDeathChests) {
+				writeRecord(deflated, entry.encode());
+			}
+
+			deflated.flush();
+			deflaterStream.finish();
+		} finally {
+			deflater.end();
+		}
+
+		Files.move(
+				temporaryFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE
+		);
+	}
+
+	private static void writeIndexEntry(DataOutputStream stream, DeathChestIndexEntry entry)
+			throws IOException {
+		stream.writeLong(entry.getIdentifier().getMostSignificantBits());
+		stream.writeLong(entry.getIdentifier().getLeastSignificantBits());
+		stream.writeLong(entry.getRegion());
+		stream.writeLong(entry.getCreationTime());
+
+		final UUID playerUUID = entry.getPlayerUUID();
+		stream.writeBoolean(playerUUID != null);
+
+		if (playerUUID != null) {
+			stream.writeLong(playerUUID.getMostSignificantBits());
+			stream.writeLong(playerUUID.getLeastSignificantBits());
+		}
+	}
+
+	private static void writeRecord(DataOutputStream stream, byte[] record) throws IOException {
+		stream.writeInt(record.length);
+		stream.write(record);
+	}
+
+	/**
+	 * Returns a snapshot of the specified state that is safe to write on another thread.
+	 *
+	 * @param state a {@link DeathChestsState}.
+	 * @param sharded whether the placed death chests are stored in region shards, in which case
+	 * only the index and the queued death chests are included.
+	 * @return the {@link DeathChestsSnapshot}.
+	 */
+	static DeathChestsSnapshot of(DeathChestsState state, boolean sharded) {
+		final List<Entry> deathChestEntries = new ArrayList<>();
+
+		if (!sharded) {
+			for (DeathChest deathChest : state.getPlacedDeathChests()) {
+				deathChestEntries.add(Entry.of(deathChest, state.isExisting(deathChest)));
+			}
+		}
+
+		final List<Entry> queuedEntries = new ArrayList<>();
+
+		for (DeathChest deathChest : state.getQueuedDeathChests()) {
+			queuedEntries.add(Entry.of(deathChest, false));
+		}
+
+		final List<DeathChestIndexEntry> index = sharded ?
+				new ArrayList<>(state.getIndexEntries()) : Collections.emptyList();
+		return new DeathChestsSnapshot(sharded, index, deathChestEntries, queuedEntries);
+	}
+
+	/**
+	 * Returns the snapshot file for the specified persistent state.
+	 *
+	 * @param dataDirectory the world data directory.
+	 * @param id the persistent state ID.
+	 * @return the snapshot file.
+	 */
+	static File getFile(File dataDirectory, String id) {
+		return new File(dataDirectory, id + ".vdc");
+	}
+
+	/**
+	 * Reads a snapshot from the specified file.
+	 *
+	 * @param file a file.
+	 * @return the {@link DeathChestsSnapshot}.
+	 * @throws IOException if an I/O error occurs or the file is not a valid snapshot.
+	 */
+	static DeathChestsSnapshot read(File file) throws IOException {
+		try (DataInputStream stream = new DataInputStream(
+				new BufferedInputStream(new FileInputStream(file))
+		)) {
+			if (stream.readInt() != MAGIC) {
+				throw new IOException("Not a death chest snapshot: " + file);
+			}
+
+			final int formatVersion = stream.readInt();
+
+			if (formatVersion < 1 || formatVersion > FORMAT_VERSION) {
+				throw new IOException("Unsupported death chest snapshot version: " + formatVersion);
+			}
+
+			final DataInputStream inflated =
+					new DataInputStream(new BufferedInputStream(new InflaterInputStream(stream)));
+			//The data version is currently only informational.
+			inflated.readInt();
+
+			final boolean sharded = inflated.readBoolean();
+			final int regionCount = inflated.readInt();
+			final List<DeathChestIndexEntry> index = new ArrayList<>(regionCount);
+
+			for (int i = 0; i < regionCount; i++) {
+				index.add(readIndexEntry(inflated, formatVersion));
+			}
+
+			final int deathChestCount = inflated.readInt();
+			final List<Entry> deathChests = new ArrayList<>(deathChestCount);
+
+			for (int i = 0; i < deathChestCount; i++) {
+				deathChests.add(new Entry(readRecord(inflated), inflated.readBoolean()));
+			}
+
+			final int queuedDeathChestCount = inflated.readInt();
+			final List<Entry> queuedDeathChests = new ArrayList<>(queuedDeathChestCount);
+
+			for (int i = 0; i < queuedDeathChestCount; i++) {
+				queuedDeathChests.add(new Entry(readRecord(inflated), false));
+			}
+
+			return new DeathChestsSnapshot(sharded, index, deathChests, queuedDeathChests);
+		}
+	}
+
+	private static DeathChestIndexEntry readIndexEntry(DataInputStream stream, int formatVersion)
+			throws IOException {
+		final UUID identifier = new UUID(stream.readLong(), stream.readLong());
+		final long region = stream.readLong();
+
+		//Version 1 indexes only contain identifiers and regions.
+		if (formatVersion == 1) {
+			return new DeathChestIndexEntry(identifier, null, 0L, region);
+		}
+
+		final long creationTime = stream.readLong();
+		final UUID playerUUID =
+				stream.readBoolean() ? new UUID(stream.readLong(), stream.readLong()) : null;
+		return new DeathChestIndexEntry(identifier, playerUUID, creationTime, region);
+	}
+
+	private static byte[] readRecord(DataInputStream stream) throws IOException {
+		final byte[] record = new byte[stream.readInt()];
+		stream.readFully(record);
+		return record;
+	}
+
+	/**
+	 * Decodes the specified death chests, splitting large batches across the common fork-join
+	 * pool. The decoder must not touch the world.
+	 *
+	 * @param records the encoded death chests.
+	 * @param decoder the decoder.
+	 * @param <T> the type of the encoded death chests.
+	 * @return a {@link List} of the decoded death chests in the same order.
+	 */
+	static <T> List<DeathChest> decodeAll(List<T> records, Function<T, DeathChest> decoder) {
+		if (records.size() < PARALLEL_DECODE_THRESHOLD) {
+			return records.stream().map(decoder).collect(Collectors.toList());
+		}
+
+		//ListTag only has an iterator-based spliterator, so it is copied to split evenly.
+		return new ArrayList<>(records).parallelStream().
+				map(decoder).
+				collect(Collectors.toList());
+	}
+
+	/**
+	 * A death chest in a {@link DeathChestsSnapshot}.
+	 * This holds either a binary record or a snapshot tag that is encoded when it is written,
+	 * so that encoding can happen off the server thread.
+	 */
+	static final class Entry {
+		private final byte @Nullable [] record;
+		@Nullable
+		private final CompoundTag tag;
+		private final boolean exists;
+
+		/**
+		 * Constructs an {@link Entry} for a binary record.
+		 *
+		 * @param record a binary record.
+		 * @param exists whether the death chest exists in the world.
+		 */
+		Entry(byte[] record, boolean exists) {
+			this.record = record;
+			tag = null;
+			this.exists = exists;
+		}
+
+		/**
+		 * Constructs an {@link Entry} for a snapshot tag.
+		 *
+		 * @param tag a snapshot tag returned by {@link DeathChest#toSnapshotTag()}.
+		 * @param exists whether the death chest exists in the world.
+		 */
+		Entry(CompoundTag tag, boolean exists) {
+			record = null;
+			this.tag = tag;
+			this.exists = exists;
+		}
+
+		/**
+		 * Returns an {@link Entry} for the specified death chest that is safe to write on
+		 * another thread.
+		 *
+		 * @param deathChest a {@link DeathChest}.
+		 * @param exists whether the death chest exists in the world.
+		 * @return the {@link Entry}.
+		 */
+		static Entry of(DeathChest deathChest, boolean exists) {
+			final byte[] record = deathChest.getRecord();
+			return record == null ?
+					new Entry(deathChest.toSnapshotTag(), exists) : new Entry(record, exists);
+		}
+
+		/**
+		 * Returns the binary record of an entry that has been read from a file.
+		 *
+		 * @return the binary record.
+		 */
+		@SuppressWarnings({"NullAway", "PMD.MethodReturnsInternalArray"})
+		byte[] getRecord() {
+			return record;
+		}
+
+		/**
+		 * Returns the binary record, encoding it if necessary.
+		 *
+		 * @return the binary record.
+		 * @throws IOException if an I/O error occurs.
+		 */
+		@SuppressWarnings({"NullAway", "PMD.MethodReturnsInternalArray"})
+		byte[] encode() throws IOException {
+			return record == null ? DeathChest.toRecord(tag) : record;
+		}
+
+		/**
+		 * Returns whether the death chest exists in the world.
+		 *
+		 * @return {@code true} if the death chest exists, or otherwise {@code false}.
+		 */
+		boolean exists() {
+			return exists;
+		}
+	}
+}
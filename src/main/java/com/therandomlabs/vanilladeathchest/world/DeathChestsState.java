@@ -23,43 +23,117 @@
 
 package com.therandomlabs.vanilladeathchest.world;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.NavigableSet;
 import java.util.PriorityQueue;
 import java.util.Queue;
 import java.util.Set;
+import java.util.TreeSet;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.ObjLongConsumer;
 import java.util.stream.Collectors;
 
+import com.therandomlabs.vanilladeathchest.VDCConfig;
+import com.therandomlabs.vanilladeathchest.VanillaDeathChest;
 import com.therandomlabs.vanilladeathchest.deathchest.DeathChest;
-import com.therandomlabs.vanilladeathchest.mixin.WorldAccessor;
+import com.therandomlabs.vanilladeathchest.deathchest.DeathChestLocationFinder;
+import com.therandomlabs.vanilladeathchest.mixin.PersistentStateManagerAccessor;
+import com.therandomlabs.vanilladeathchest.mixin.ThreadedAnvilChunkStorageAccessor;
 import com.therandomlabs.vanilladeathchest.util.DeathChestBlockEntity;
+import it.unimi.dsi.fastutil.longs.Long2ObjectMap;
+import it.unimi.dsi.fastutil.longs.Long2ObjectOpenHashMap;
+import it.unimi.dsi.fastutil.longs.LongArrayList;
+import it.unimi.dsi.fastutil.longs.LongIterator;
+import it.unimi.dsi.fastutil.longs.LongOpenHashSet;
+import it.unimi.dsi.fastutil.longs.LongSet;
+import it.unimi.dsi.fastutil.longs.LongSets;
 import net.fabricmc.fabric.api.util.NbtType;
 import net.minecraft.block.entity.BlockEntity;
 import net.minecraft.nbt.CompoundTag;
 import net.minecraft.nbt.ListTag;
 import net.minecraft.nbt.NbtHelper;
+import net.minecraft.nbt.NbtIo;
+import net.minecraft.nbt.Tag;
+import net.minecraft.server.MinecraftServer;
+import net.minecraft.server.world.ChunkHolder;
 import net.minecraft.server.world.ServerWorld;
+import net.minecraft.util.math.BlockBox;
 import net.minecraft.util.math.BlockPos;
+import net.minecraft.util.math.ChunkPos;
+import net.minecraft.util.math.Direction;
 import net.minecraft.world.PersistentState;
+import net.minecraft.world.PersistentStateManager;
+import net.minecraft.world.chunk.WorldChunk;
 import org.checkerframework.checker.nullness.qual.Nullable;
 
 /**
  * Persistent death chests state.
  */
 public final class DeathChestsState extends PersistentState {
+	private static final String ID = "deathchests";
+	//States that are being loaded in the background. This is only accessed on the server thread.
+	private static final Map<ServerWorld, CompletableFuture<DeathChestsState>> preloadingStates =
+			new HashMap<>();
+
 	private final ServerWorld world;
 	private final Map<UUID, DeathChest> deathChests = new HashMap<>();
-	private final Map<BlockPos, DeathChest> existingDeathChests = new HashMap<>();
+	//Double chests are registered at the positions and in the chunks of both halves.
+	private final Long2ObjectMap<DeathChest> existingDeathChests = new Long2ObjectOpenHashMap<>();
+	private final Long2ObjectMap<Set<DeathChest>> chunkDeathChests = new Long2ObjectOpenHashMap<>();
+	private final LongSet loadedChunks = new LongOpenHashSet();
+	//Existing death chests whose west halves are in loaded chunks.
+	private final Set<DeathChest> loadedDeathChests = new HashSet<>();
+	//Death chests that may have become empty since the automatic remover last checked them.
+	private final Set<DeathChest> changedDeathChests = new HashSet<>();
+	private final TimingWheel<DeathChest> protectionTimers;
+	private final Map<DeathChest, TimingWheel.Timer<DeathChest>> protectionTimerHandles =
+			new HashMap<>();
+	private final TimingWheel<DeathChest> expiryTimers;
+	private final Map<DeathChest, TimingWheel.Timer<DeathChest>> expiryTimerHandles =
+			new HashMap<>();
+	//Expired death chests in loaded chunks that have yet to be removed, in order of expiry.
+	private final Set<DeathChest> expiredDeathChests = new LinkedHashSet<>();
 	private final Queue<DeathChest> queuedDeathChests =
 			new PriorityQueue<>(Comparator.comparing(DeathChest::getCreationTime));
+	private final Map<DeathChest, DeathChestLocationFinder.Search> locationSearches =
+			new HashMap<>();
+	//Includes death chests in regions that have not been loaded.
+	private final Map<UUID, DeathChestIndexEntry> index = new HashMap<>();
+	private final Map<UUID, NavigableSet<DeathChestIndexEntry>> ownerIndex = new HashMap<>();
+	private final Long2ObjectMap<Set<UUID>> regionDeathChests = new Long2ObjectOpenHashMap<>();
+	//Death chests that no longer exist and are archived on the next save.
+	private final Map<UUID, DeathChest> archivedDeathChests = new HashMap<>();
+	private final DeathChestsJournal journal;
+	private final DeathChestShards shards;
+	private final DeathChestArchive archive;
+	private boolean shardedOnDisk;
+	private boolean indexDirty;
+	private boolean ownerIndexIncomplete;
+	private volatile boolean saveFailed;
+	private int existingDeathChestsGeneration;
 
-	private DeathChestsState(String name, ServerWorld world) {
-		super(name);
+	private DeathChestsState(ServerWorld world, File directory) {
+		super(ID);
 		this.world = world;
+		protectionTimers = new TimingWheel<>(world.getTime());
+		expiryTimers = new TimingWheel<>(world.getTime());
+		journal = new DeathChestsJournal(directory, ID);
+		shards = new DeathChestShards(directory, ID);
+		archive = new DeathChestArchive(directory, ID);
 	}
 
 	/**
@@ -68,20 +142,43 @@ public final class DeathChestsState extends PersistentState {
 	@Override
 	public void fromTag(CompoundTag tag) {
 		deathChests.clear();
-		tag.getList("DeathChests", NbtType.COMPOUND).stream().
-				map(deathChestTag -> DeathChest.fromTag(world, (CompoundTag) deathChestTag)).
-				forEach(deathChest -> deathChests.put(deathChest.getIdentifier(), deathChest));
-
 		existingDeathChests.clear();
-		tag.getList("ExistingDeathChests", NbtType.INT_ARRAY).stream().
-				map(NbtHelper::toUuid).
-				map(deathChests::get).
-				forEach(deathChest -> existingDeathChests.put(deathChest.getPos(), deathChest));
+		existingDeathChestsGeneration++;
+		chunkDeathChests.clear();
+		loadedDeathChests.clear();
+		changedDeathChests.clear();
+		protectionTimers.clear();
+		protectionTimerHandles.clear();
+		expiryTimers.clear();
+		expiryTimerHandles.clear();
+		expiredDeathChests.clear();
+		archivedDeathChests.clear();
+		index.clear();
+		ownerIndex.clear();
+		regionDeathChests.clear();
+		shards.clear();
+
+		//If the death chests are stored in region shards, only the index is read here.
+		shardedOnDisk = tag.contains("Regions", NbtType.LIST);
+
+		if (shardedOnDisk) {
+			for (Tag regionTag : tag.getList("Regions", NbtType.COMPOUND)) {
+				final CompoundTag compound = (CompoundTag) regionTag;
+				index(new DeathChestIndexEntry(
+						NbtHelper.toUuid(compound.get("Identifier")), null, 0L,
+						compound.getLong("Region")
+				));
+			}
+		} else {
+			DeathChestShards.readDeathChests(this, tag);
+		}
 
 		queuedDeathChests.clear();
-		tag.getList("QueuedDeathChests", NbtType.COMPOUND).stream().
-				map(deathChestTag -> DeathChest.fromTag(world, (CompoundTag) deathChestTag)).
-				forEach(queuedDeathChests::add);
+		locationSearches.clear();
+		queuedDeathChests.addAll(DeathChestsSnapshot.decodeAll(
+				tag.getList("QueuedDeathChests", NbtType.COMPOUND),
+				deathChestTag -> DeathChest.fromTag(world, (CompoundTag) deathChestTag)
+		));
 	}
 
 	/**
@@ -89,39 +186,88 @@ public final class DeathChestsState extends PersistentState {
 	 */
 	@Override
 	public CompoundTag toTag(CompoundTag tag) {
-		final ListTag deathChestsList = new ListTag();
-		deathChests.values().stream().
-				map(deathChest -> deathChest.toTag(new CompoundTag())).
-				forEach(deathChestsList::add);
-		tag.put("DeathChests", deathChestsList);
-
-		final ListTag existingDeathChestsList = new ListTag();
-		existingDeathChests.values().stream().
-				map(DeathChest::getIdentifier).
-				map(NbtHelper::fromUuid).
-				forEach(existingDeathChestsList::add);
-		tag.put("ExistingDeathChests", existingDeathChestsList);
+		loadAllRegions();
+		DeathChestShards.writeDeathChests(this, tag, deathChests.values());
 
 		final ListTag queuedDeathChestsList = new ListTag();
-		queuedDeathChests.stream().
-				map(deathChest -> deathChest.toTag(new CompoundTag())).
-				forEach(queuedDeathChestsList::add);
-		tag.put("QueuedDeathChests", queuedDeathChestsList);
 
+		for (DeathChest deathChest : queuedDeathChests) {
+			queuedDeathChestsList.add(deathChest.toSnapshotTag());
+		}
+
+		tag.put("QueuedDeathChests", queuedDeathChestsList);
 		return tag;
 	}
 
 	/**
-	 * Returns the identifiers of all placed death chests.
+	 * Saves this state on the death chest I/O thread if it is dirty.
+	 * Depending on the storage mode, the state is written to a binary snapshot, appended to the
+	 * journal or written to the region shards that have changed.
+	 * Death chests that no longer exist are appended to the archive.
+	 *
+	 * @param file the legacy NBT file, which is deleted once a snapshot has been written.
+	 */
+	@Override
+	public void save(File file) {
+		if (saveFailed) {
+			//Whatever the last save left on disk cannot be trusted, so everything is rewritten.
+			saveFailed = false;
+			journal.requireCompaction();
+			shards.requireRewrite();
+			markDirty();
+		}
+
+		if (!isDirty()) {
+			return;
+		}
+
+		final VDCConfig.Storage config = VanillaDeathChest.config().storage;
+		final File snapshotFile = DeathChestsSnapshot.getFile(file.getParentFile(), ID);
+
+		//Archived death chests are written before the files that no longer contain them.
+		for (DeathChest deathChest : archivedDeathChests.values()) {
+			archive.add(deathChest.toSnapshotTag());
+		}
+
+		archivedDeathChests.clear();
+
+		if (config.mode == VDCConfig.StorageMode.REGION_SHARDED) {
+			final DeathChestShards.Changes changes = shards.collectChanges(this, !shardedOnDisk);
+			final boolean writeIndex = indexDirty || changes.isFullRewrite() ||
+					!snapshotFile.exists() || file.exists();
+			write(
+					file, snapshotFile, changes,
+					writeIndex ? DeathChestsSnapshot.of(this, true) : null
+			);
+			shardedOnDisk = true;
+			journal.reset();
+		} else if (config.mode == VDCConfig.StorageMode.JOURNALED && !shardedOnDisk &&
+				snapshotFile.exists() &&
+				!journal.shouldCompact(config.journalCompactionThreshold)) {
+			journal.save(archive, () -> saveFailed = true);
+		} else {
+			loadAllRegions();
+			write(file, snapshotFile, null, DeathChestsSnapshot.of(this, false));
+			shardedOnDisk = false;
+			journal.reset();
+		}
+
+		shards.clearDirtyRegions();
+		indexDirty = false;
+		setDirty(false);
+	}
+
+	/**
+	 * Returns the identifiers of all placed death chests that have not been archived.
 	 *
-	 * @return a {@link Set} of {@link UUID}s.
+	 * @return an unmodifiable {@link Set} of {@link UUID}s.
 	 */
 	public Set<UUID> getDeathChestIdentifiers() {
-		return deathChests.keySet();
+		return Collections.unmodifiableSet(index.keySet());
 	}
 
 	/**
-	 * Returns the identifier strings of all placed death chests.
+	 * Returns the identifier strings of all placed death chests that have not been archived.
 	 *
 	 * @return a {@link Set} of strings.
 	 */
@@ -130,34 +276,303 @@ public final class DeathChestsState extends PersistentState {
 	}
 
 	/**
-	 * Returns all placed death chests.
+	 * Returns all placed death chests that have not been archived.
+	 * If the death chests are stored in region shards, this causes all shards to be loaded.
 	 *
 	 * @return a {@link Collection} of all placed death chests.
 	 */
 	public Collection<DeathChest> getDeathChests() {
+		loadAllRegions();
 		return new HashSet<>(deathChests.values());
 	}
 
 	/**
-	 * Returns the death chest with the specified identifier.
+	 * Returns the death chest with the specified identifier if it has not been archived.
 	 *
 	 * @param identifier an identifier.
-	 * @return the {@link DeathChest} with the specified identifier.
+	 * @return the {@link DeathChest} with the specified identifier, or {@code null} if it does
+	 * not exist or has been archived.
 	 */
 	@Nullable
 	public DeathChest getDeathChest(UUID identifier) {
+		final DeathChest deathChest = deathChests.get(identifier);
+
+		if (deathChest != null) {
+			return deathChest;
+		}
+
+		final DeathChestIndexEntry entry = index.get(identifier);
+
+		if (entry == null) {
+			return null;
+		}
+
+		loadRegion(entry.getRegion());
 		return deathChests.get(identifier);
 	}
 
 	/**
-	 * Returns all existing death chests.
+	 * Returns the placed death chests that belong to the specified player that have not been
+	 * archived, from oldest to newest.
+	 * Only the regions that contain them are loaded.
+	 *
+	 * @param playerUUID a player UUID.
+	 * @return a {@link List} of death chests.
+	 */
+	public List<DeathChest> getDeathChests(UUID playerUUID) {
+		final NavigableSet<DeathChestIndexEntry> entries = getOwnerIndex(playerUUID);
+
+		if (entries.isEmpty()) {
+			return Collections.emptyList();
+		}
+
+		final List<DeathChest> deathChests = new ArrayList<>(entries.size());
+
+		for (DeathChestIndexEntry entry : new ArrayList<>(entries)) {
+			final DeathChest deathChest = getDeathChest(entry.getIdentifier());
+
+			if (deathChest != null) {
+				deathChests.add(deathChest);
+			}
+		}
+
+		return deathChests;
+	}
+
+	/**
+	 * Returns the number of placed death chests that belong to the specified player that have
+	 * not been archived.
+	 *
+	 * @param playerUUID a player UUID.
+	 * @return the number of death chests that belong to the specified player.
+	 */
+	public int getDeathChestCount(UUID playerUUID) {
+		return getOwnerIndex(playerUUID).size();
+	}
+
+	/**
+	 * Returns the most recently created placed death chest that belongs to the specified player
+	 * that has not been archived.
+	 *
+	 * @param playerUUID a player UUID.
+	 * @return the latest {@link DeathChest} that belongs to the specified player,
+	 * or {@code null} if there is none.
+	 */
+	@Nullable
+	public DeathChest getLatestDeathChest(UUID playerUUID) {
+		final NavigableSet<DeathChestIndexEntry> entries = getOwnerIndex(playerUUID);
+		return entries.isEmpty() ? null : getDeathChest(entries.last().getIdentifier());
+	}
+
+	/**
+	 * Returns the death chest with the specified identifier, reading it from the archive if
+	 * it has been archived. This may block on disk I/O.
+	 *
+	 * @param identifier an identifier.
+	 * @return the {@link DeathChest} with the specified identifier, or {@code null} if it does
+	 * not exist.
+	 */
+	@Nullable
+	public DeathChest findDeathChest(UUID identifier) {
+		final DeathChest deathChest = getDeathChest(identifier);
+
+		if (deathChest != null) {
+			return deathChest;
+		}
+
+		final DeathChest archived = archivedDeathChests.get(identifier);
+
+		if (archived != null) {
+			return archived;
+		}
+
+		try {
+			final CompoundTag tag = archive.read(identifier);
+			return tag == null ? null : DeathChest.fromTag(world, tag);
+		} catch (IOException ex) {
+			VanillaDeathChest.logger.error("Failed to read death chest archive", ex);
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the identifiers of the archived death chests that belong to the specified player.
+	 * This may block on disk I/O.
+	 *
+	 * @param playerUUID a player UUID.
+	 * @return a {@link Set} of death chest identifiers.
+	 */
+	public Set<UUID> getArchivedDeathChestIdentifiers(UUID playerUUID) {
+		final Set<UUID> identifiers = new HashSet<>();
+
+		for (DeathChest deathChest : archivedDeathChests.values()) {
+			if (deathChest.getPlayerUUID().equals(playerUUID)) {
+				identifiers.add(deathChest.getIdentifier());
+			}
+		}
+
+		try {
+			identifiers.addAll(archive.getIdentifiers(playerUUID));
+		} catch (IOException ex) {
+			VanillaDeathChest.logger.error("Failed to read death chest archive index", ex);
+		}
+
+		return identifiers;
+	}
+
+	/**
+	 * Returns the identifiers of all archived death chests.
+	 * This may block on disk I/O.
+	 *
+	 * @return a {@link Set} of death chest identifiers.
+	 */
+	public Set<UUID> getArchivedDeathChestIdentifiers() {
+		final Set<UUID> identifiers = new HashSet<>(archivedDeathChests.keySet());
+
+		try {
+			identifiers.addAll(archive.getIdentifiers());
+		} catch (IOException ex) {
+			VanillaDeathChest.logger.error("Failed to read death chest archive index", ex);
+		}
+
+		return identifiers;
+	}
+
+	/**
+	 * Returns all existing death chests in loaded regions.
+	 * Every region that contains a loaded chunk is loaded.
 	 *
-	 * @return a {@link Collection} of all existing death chests.
+	 * @return a {@link Collection} of all existing death chests in loaded regions.
 	 */
 	public Collection<DeathChest> getExistingDeathChests() {
 		return new HashSet<>(existingDeathChests.values());
 	}
 
+	/**
+	 * Returns the existing death chests whose west halves are in loaded chunks.
+	 *
+	 * @return an unmodifiable {@link Collection} of existing death chests in loaded chunks.
+	 */
+	public Collection<DeathChest> getLoadedDeathChests() {
+		return Collections.unmodifiableSet(loadedDeathChests);
+	}
+
+	/**
+	 * Called when the contents of a death chest may have changed so that it may be empty.
+	 *
+	 * @param deathChest a {@link DeathChest}.
+	 */
+	public void onContentsChanged(DeathChest deathChest) {
+		if (loadedDeathChests.contains(deathChest)) {
+			changedDeathChests.add(deathChest);
+		}
+	}
+
+	/**
+	 * Returns and clears the loaded death chests whose contents may have changed since this
+	 * method was last called.
+	 *
+	 * @return a {@link List} of loaded death chests that may be empty.
+	 */
+	public List<DeathChest> pollChangedDeathChests() {
+		if (changedDeathChests.isEmpty()) {
+			return Collections.emptyList();
+		}
+
+		final List<DeathChest> deathChests = new ArrayList<>(changedDeathChests);
+		changedDeathChests.clear();
+		return deathChests;
+	}
+
+	/**
+	 * Returns whether the specified chunk is loaded.
+	 * This is safe to call while chunks are being unloaded.
+	 *
+	 * @param chunkX a chunk X coordinate.
+	 * @param chunkZ a chunk Z coordinate.
+	 * @return {@code true} if the chunk is loaded, or otherwise {@code false}.
+	 */
+	public boolean isChunkLoaded(int chunkX, int chunkZ) {
+		return loadedChunks.contains(ChunkPos.toLong(chunkX, chunkZ));
+	}
+
+	/**
+	 * Returns the existing death chests that have at least one half in the specified chunk.
+	 * The chunk's region is loaded if necessary.
+	 *
+	 * @param chunkX a chunk X coordinate.
+	 * @param chunkZ a chunk Z coordinate.
+	 * @return an unmodifiable {@link Collection} of existing death chests.
+	 */
+	public Collection<DeathChest> getExistingDeathChests(int chunkX, int chunkZ) {
+		loadRegion(DeathChestShards.getRegionOfChunk(chunkX, chunkZ));
+		final Set<DeathChest> deathChests = chunkDeathChests.get(ChunkPos.toLong(chunkX, chunkZ));
+		return deathChests == null ?
+				Collections.emptySet() : Collections.unmodifiableSet(deathChests);
+	}
+
+	/**
+	 * Returns the existing death chests that have at least one half in the specified box.
+	 * The regions that the box intersects are loaded if necessary.
+	 *
+	 * @param box a {@link BlockBox}.
+	 * @return a {@link Set} of existing death chests.
+	 */
+	public Set<DeathChest> getExistingDeathChests(BlockBox box) {
+		final int minChunkX = box.minX >> 4;
+		final int minChunkZ = box.minZ >> 4;
+		final int maxChunkX = box.maxX >> 4;
+		final int maxChunkZ = box.maxZ >> 4;
+
+		for (int regionX = minChunkX >> 5; regionX <= maxChunkX >> 5; regionX++) {
+			for (int regionZ = minChunkZ >> 5; regionZ <= maxChunkZ >> 5; regionZ++) {
+				loadRegion(ChunkPos.toLong(regionX, regionZ));
+			}
+		}
+
+		final Set<DeathChest> deathChests = new HashSet<>();
+		final long chunkCount =
+				(long) (maxChunkX - minChunkX + 1) * (long) (maxChunkZ - minChunkZ + 1);
+
+		//For large boxes, it is cheaper to go through the chunks that have death chests.
+		if (chunkCount > chunkDeathChests.size()) {
+			for (Long2ObjectMap.Entry<Set<DeathChest>> entry :
+					chunkDeathChests.long2ObjectEntrySet()) {
+				final long chunk = entry.getLongKey();
+				final int chunkX = ChunkPos.getPackedX(chunk);
+				final int chunkZ = ChunkPos.getPackedZ(chunk);
+
+				if (chunkX >= minChunkX && chunkX <= maxChunkX && chunkZ >= minChunkZ &&
+						chunkZ <= maxChunkZ) {
+					addIntersecting(deathChests, entry.getValue(), box);
+				}
+			}
+		} else {
+			for (int chunkX = minChunkX; chunkX <= maxChunkX; chunkX++) {
+				for (int chunkZ = minChunkZ; chunkZ <= maxChunkZ; chunkZ++) {
+					final Set<DeathChest> chunk =
+							chunkDeathChests.get(ChunkPos.toLong(chunkX, chunkZ));
+
+					if (chunk != null) {
+						addIntersecting(deathChests, chunk, box);
+					}
+				}
+			}
+		}
+
+		return deathChests;
+	}
+
+	/**
+	 * Returns the existing death chests generation, which changes whenever a death chest starts or
+	 * stops existing.
+	 *
+	 * @return the existing death chests generation.
+	 */
+	public int getExistingDeathChestsGeneration() {
+		return existingDeathChestsGeneration;
+	}
+
 	/**
 	 * Returns the existing death chest at the specified position.
 	 *
@@ -167,8 +582,15 @@ public final class DeathChestsState extends PersistentState {
 	 */
 	@Nullable
 	public DeathChest getExistingDeathChest(BlockPos pos) {
-		final DeathChest deathChest = existingDeathChests.get(pos);
-		return deathChest == null ? existingDeathChests.get(pos.west()) : deathChest;
+		final int x = pos.getX();
+		loadRegion(DeathChestShards.getRegionOfBlock(x, pos.getZ()));
+
+		//The west half of a death chest may be in the neighboring region.
+		if ((x & 511) == 0) {
+			loadRegion(DeathChestShards.getRegionOfBlock(x - 1, pos.getZ()));
+		}
+
+		return existingDeathChests.get(pos.asLong());
 	}
 
 	/**
@@ -177,49 +599,946 @@ public final class DeathChestsState extends PersistentState {
 	 * @param deathChest a {@link DeathChest}.
 	 */
 	public void addDeathChest(DeathChest deathChest) {
+		final long region = DeathChestShards.getRegion(deathChest.getPos());
+		//The rest of the region must be loaded before its shard can be rewritten.
+		loadRegion(region);
+		archivedDeathChests.remove(deathChest.getIdentifier());
 		deathChests.put(deathChest.getIdentifier(), deathChest);
-		existingDeathChests.put(deathChest.getPos(), deathChest);
+		addExistingDeathChest(deathChest);
+
+		if (index(DeathChestIndexEntry.of(deathChest))) {
+			indexDirty = true;
+		}
+
+		shards.markDirty(region);
+		record(DeathChestsJournal.ADD, deathChest);
 	}
 
 	/**
-	 * Returns a queue of all unplaced death chests. Changes to this queue are kept.
+	 * Adds an existing death chest that may have been archived, removing it from the archive.
 	 *
-	 * @return a queue of all unplaced death chests.
+	 * @param deathChest a {@link DeathChest}.
 	 */
-	public Queue<DeathChest> getQueuedDeathChests() {
-		return queuedDeathChests;
+	public void restoreDeathChest(DeathChest deathChest) {
+		final UUID identifier = deathChest.getIdentifier();
+
+		if (!deathChests.containsKey(identifier) &&
+				archivedDeathChests.remove(identifier) == null) {
+			archive.remove(identifier, deathChest.getPlayerUUID());
+		}
+
+		addDeathChest(deathChest);
 	}
 
 	/**
-	 * Returns the {@link DeathChestsState} instance for the specified world.
+	 * Removes the specified death chest from the existing death chests.
+	 * It is archived on the next save.
 	 *
-	 * @param world a {@link ServerWorld}.
-	 * @return the {@link DeathChestsState} instance for the specified world.
+	 * @param deathChest a {@link DeathChest}.
 	 */
-	public static DeathChestsState get(ServerWorld world) {
-		return world.getPersistentStateManager().getOrCreate(
-				() -> new DeathChestsState("deathchests", world), "deathchests"
-		);
+	public void removeExistingDeathChest(DeathChest deathChest) {
+		if (removeExisting(deathChest)) {
+			archiveDeathChest(deathChest);
+			record(DeathChestsJournal.REMOVE, deathChest.getIdentifier());
+		}
 	}
 
 	/**
-	 * Called when a block entity is unloaded.
+	 * Called when the specified death chest is locked or unlocked.
 	 *
-	 * @param blockEntity a {@link BlockEntity}.
-	 * @param world a {@link ServerWorld}.
+	 * @param deathChest a {@link DeathChest}.
 	 */
-	public static void onBlockEntityUnload(BlockEntity blockEntity, ServerWorld world) {
-		//Fabric API invokes this event in three different locations, but only two of them are
-		//when a block entity is removed. The other one is just when a chunk is unloaded.
-		//We can differentiate between these by checking whether the block entity is in
-		//World#unloadedBlockEntities.
-		if (((WorldAccessor) world).getUnloadedBlockEntities().contains(blockEntity)) {
+	public void onLockChanged(DeathChest deathChest) {
+		if (journal.isReplaying()) {
 			return;
 		}
 
-		if (blockEntity instanceof DeathChestBlockEntity) {
-			final DeathChest deathChest = ((DeathChestBlockEntity) blockEntity).getDeathChest();
-			get(world).existingDeathChests.values().remove(deathChest);
+		shards.markDirty(DeathChestShards.getRegion(deathChest.getPos()));
+		markDirty();
+
+		if (isJournaling()) {
+			journal.recordLock(deathChest);
+		}
+	}
+
+	/**
+	 * Fires the protection expiry timers of all existing death chests whose protection has expired
+	 * since this method was last called. This should be called once per world tick.
+	 *
+	 * @param action the action to perform for each death chest and the world time at which its
+	 * protection expired.
+	 */
+	public void advanceProtectionTimers(ObjLongConsumer<DeathChest> action) {
+		protectionTimers.advance(world.getTime(), timer -> {
+			final DeathChest deathChest = timer.getValue();
+			protectionTimerHandles.remove(deathChest);
+
+			//The configuration may have been reloaded since the timer was scheduled.
+			final long expiryTime = getProtectionExpiryTime(deathChest);
+
+			if (expiryTime == timer.getDeadline()) {
+				action.accept(deathChest, expiryTime);
+			} else {
+				scheduleProtectionExpiry(deathChest);
+			}
+		});
+	}
+
+	/**
+	 * Fires the expiry timers of all existing death chests that have expired since this method
+	 * was last called. This should be called once per world tick.
+	 */
+	public void advanceExpiryTimers() {
+		expiryTimers.advance(world.getTime(), timer -> {
+			final DeathChest deathChest = timer.getValue();
+			expiryTimerHandles.remove(deathChest);
+
+			//The configuration may have been reloaded since the timer was scheduled.
+			if (getExpiryTime(deathChest) != timer.getDeadline()) {
+				scheduleExpiry(deathChest);
+			} else if (loadedDeathChests.contains(deathChest)) {
+				expiredDeathChests.add(deathChest);
+			}
+		});
+	}
+
+	/**
+	 * Retrieves and removes the expired death chest in a loaded chunk that expired first.
+	 *
+	 * @return the expired {@link DeathChest}, or {@code null} if there are none.
+	 */
+	@Nullable
+	public DeathChest pollExpiredDeathChest() {
+		final Iterator<DeathChest> it = expiredDeathChests.iterator();
+
+		if (!it.hasNext()) {
+			return null;
+		}
+
+		final DeathChest deathChest = it.next();
+		it.remove();
+		return deathChest;
+	}
+
+	/**
+	 * Returns all unplaced death chests.
+	 *
+	 * @return an unmodifiable {@link Collection} of all unplaced death chests.
+	 */
+	public Collection<DeathChest> getQueuedDeathChests() {
+		return Collections.unmodifiableCollection(queuedDeathChests);
+	}
+
+	/**
+	 * Queues the specified death chest for placement.
+	 *
+	 * @param deathChest a {@link DeathChest}.
+	 */
+	public void queueDeathChest(DeathChest deathChest) {
+		queuedDeathChests.add(deathChest);
+		indexDirty = true;
+		record(DeathChestsJournal.QUEUE, deathChest);
+	}
+
+	/**
+	 * Returns the unplaced death chest with the earliest creation time without removing it
+	 * from the queue.
+	 *
+	 * @return the unplaced {@link DeathChest} with the earliest creation time,
+	 * or {@code null} if there are no unplaced death chests.
+	 */
+	@Nullable
+	public DeathChest peekQueuedDeathChest() {
+		return queuedDeathChests.peek();
+	}
+
+	/**
+	 * Removes and returns the unplaced death chest with the earliest creation time.
+	 *
+	 * @return the unplaced {@link DeathChest} with the earliest creation time,
+	 * or {@code null} if there are no unplaced death chests.
+	 */
+	@Nullable
+	public DeathChest pollQueuedDeathChest() {
+		final DeathChest deathChest = queuedDeathChests.poll();
+
+		if (deathChest != null) {
+			locationSearches.remove(deathChest);
+			indexDirty = true;
+			record(DeathChestsJournal.DEQUEUE, deathChest.getIdentifier());
+		}
+
+		return deathChest;
+	}
+
+	/**
+	 * Returns the location search for the specified unplaced death chest.
+	 *
+	 * @param deathChest an unplaced {@link DeathChest}.
+	 * @return the {@link DeathChestLocationFinder.Search} for the specified death chest,
+	 * or {@code null} if one has not been started.
+	 */
+	@Nullable
+	public DeathChestLocationFinder.Search getLocationSearch(DeathChest deathChest) {
+		return locationSearches.get(deathChest);
+	}
+
+	/**
+	 * Sets the location search for the specified unplaced death chest.
+	 * The search is discarded when the death chest is removed from the queue.
+	 *
+	 * @param deathChest an unplaced {@link DeathChest}.
+	 * @param search a {@link DeathChestLocationFinder.Search} for the specified death chest.
+	 */
+	public void setLocationSearch(DeathChest deathChest, DeathChestLocationFinder.Search search) {
+		locationSearches.put(deathChest, search);
+	}
+
+	private void addExistingDeathChest(DeathChest deathChest) {
+		final long pos = deathChest.getPos().asLong();
+		putExisting(pos, deathChest);
+
+		if (deathChest.isDoubleChest()) {
+			putExisting(BlockPos.offset(pos, Direction.EAST), deathChest);
+		}
+
+		final int x = deathChest.getPos().getX();
+		final int z = deathChest.getPos().getZ();
+		final long chunk = ChunkPos.toLong(x >> 4, z >> 4);
+		addToChunk(chunk, deathChest);
+
+		if (deathChest.isDoubleChest()) {
+			addToChunk(ChunkPos.toLong((x + 1) >> 4, z >> 4), deathChest);
+		}
+
+		if (loadedChunks.contains(chunk)) {
+			loadedDeathChests.add(deathChest);
+			changedDeathChests.add(deathChest);
+		}
+
+		scheduleProtectionExpiry(deathChest);
+		scheduleExpiry(deathChest);
+	}
+
+	@SuppressWarnings("PMD.CompareObjectsWithEquals")
+	private void putExisting(long pos, DeathChest deathChest) {
+		final DeathChest replaced = existingDeathChests.put(pos, deathChest);
+		existingDeathChestsGeneration++;
+
+		if (replaced != null && replaced != deathChest) {
+			removeExisting(replaced);
+
+			//A death chest that has been replaced by another one no longer exists.
+			if (!replaced.getIdentifier().equals(deathChest.getIdentifier())) {
+				archiveDeathChest(replaced);
+			}
+		}
+	}
+
+	private boolean removeExisting(DeathChest deathChest) {
+		final long pos = deathChest.getPos().asLong();
+		//DeathChest does not override equals, so only mappings to this instance are removed.
+		boolean removed = existingDeathChests.remove(pos, deathChest);
+
+		if (deathChest.isDoubleChest()) {
+			removed |= existingDeathChests.remove(BlockPos.offset(pos, Direction.EAST), deathChest);
+		}
+
+		if (removed) {
+			existingDeathChestsGeneration++;
+			removeFromChunks(deathChest);
+			loadedDeathChests.remove(deathChest);
+			changedDeathChests.remove(deathChest);
+
+			expiredDeathChests.remove(deathChest);
+			cancelTimer(protectionTimers, protectionTimerHandles, deathChest);
+			cancelTimer(expiryTimers, expiryTimerHandles, deathChest);
+		}
+
+		return removed;
+	}
+
+	private void scheduleProtectionExpiry(DeathChest deathChest) {
+		scheduleTimer(
+				protectionTimers, protectionTimerHandles, deathChest,
+				getProtectionExpiryTime(deathChest)
+		);
+	}
+
+	private void scheduleExpiry(DeathChest deathChest) {
+		scheduleTimer(expiryTimers, expiryTimerHandles, deathChest, getExpiryTime(deathChest));
+	}
+
+	private static void scheduleTimer(
+			TimingWheel<DeathChest> timers, Map<DeathChest, TimingWheel.Timer<DeathChest>> handles,
+			DeathChest deathChest, long time
+	) {
+		if (time != Long.MAX_VALUE && !handles.containsKey(deathChest)) {
+			handles.put(deathChest, timers.schedule(time, deathChest));
+		}
+	}
+
+	//Only replaces the timer if the death chest is now due at a different time.
+	private static void rescheduleTimer(
+			TimingWheel<DeathChest> timers, Map<DeathChest, TimingWheel.Timer<DeathChest>> handles,
+			DeathChest deathChest, long time
+	) {
+		final TimingWheel.Timer<DeathChest> timer = handles.get(deathChest);
+
+		if (timer == null || timer.getDeadline() != time) {
+			cancelTimer(timers, handles, deathChest);
+			scheduleTimer(timers, handles, deathChest, time);
+		}
+	}
+
+	private static void cancelTimer(
+			TimingWheel<DeathChest> timers, Map<DeathChest, TimingWheel.Timer<DeathChest>> handles,
+			DeathChest deathChest
+	) {
+		final TimingWheel.Timer<DeathChest> timer = handles.remove(deathChest);
+
+		if (timer != null) {
+			timers.cancel(timer);
+		}
+	}
+
+	//Returns the world time at which the death chest expires, or Long.MAX_VALUE if it never
+	//expires.
+	private static long getExpiryTime(DeathChest deathChest) {
+		final VDCConfig config = VanillaDeathChest.config();
+
+		if (config.expiry.period == 0) {
+			return Long.MAX_VALUE;
+		}
+
+		long startTime = deathChest.getCreationTime();
+
+		if (config.expiry.startAfterProtection && config.protection.enable) {
+			startTime = getProtectionExpiryTime(deathChest);
+
+			if (startTime == Long.MAX_VALUE) {
+				return Long.MAX_VALUE;
+			}
+		}
+
+		return startTime + config.expiry.period;
+	}
+
+	//Returns the first world time at which the death chest is no longer protected, or
+	//Long.MAX_VALUE if it is protected indefinitely or not at all.
+	private static long getProtectionExpiryTime(DeathChest deathChest) {
+		final VDCConfig.Protection config = VanillaDeathChest.config().protection;
+
+		if (!config.enable || config.period == 0) {
+			return Long.MAX_VALUE;
+		}
+
+		//This matches DeathChest#isProtectedFrom.
+		return deathChest.getCreationTime() + config.period + 1L;
+	}
+
+	private void addToChunk(long chunk, DeathChest deathChest) {
+		Set<DeathChest> deathChests = chunkDeathChests.get(chunk);
+
+		if (deathChests == null) {
+			deathChests = new HashSet<>();
+			chunkDeathChests.put(chunk, deathChests);
+		}
+
+		deathChests.add(deathChest);
+	}
+
+	private void removeFromChunks(DeathChest deathChest) {
+		final BlockPos pos = deathChest.getPos();
+		removeFromChunk(ChunkPos.toLong(pos.getX() >> 4, pos.getZ() >> 4), deathChest);
+
+		if (deathChest.isDoubleChest()) {
+			removeFromChunk(ChunkPos.toLong((pos.getX() + 1) >> 4, pos.getZ() >> 4), deathChest);
+		}
+	}
+
+	private void removeFromChunk(long chunk, DeathChest deathChest) {
+		final Set<DeathChest> deathChests = chunkDeathChests.get(chunk);
+
+		if (deathChests != null && deathChests.remove(deathChest) && deathChests.isEmpty()) {
+			chunkDeathChests.remove(chunk);
+		}
+	}
+
+	private static void addIntersecting(
+			Set<DeathChest> result, Set<DeathChest> deathChests, BlockBox box
+	) {
+		for (DeathChest deathChest : deathChests) {
+			final BlockPos pos = deathChest.getPos();
+
+			if (box.contains(pos) ||
+					(deathChest.isDoubleChest() && box.contains(pos.east()))) {
+				result.add(deathChest);
+			}
+		}
+	}
+
+	private void archiveDeathChest(DeathChest deathChest) {
+		final UUID identifier = deathChest.getIdentifier();
+		deathChests.remove(identifier);
+
+		//Death chests that are removed by journal records have already been archived.
+		if (!journal.isReplaying()) {
+			archivedDeathChests.put(identifier, deathChest);
+		}
+
+		final DeathChestIndexEntry entry = index.remove(identifier);
+
+		if (entry != null) {
+			final long region = entry.getRegion();
+			final Set<UUID> identifiers = regionDeathChests.get(region);
+
+			if (identifiers != null && identifiers.remove(identifier) && identifiers.isEmpty()) {
+				regionDeathChests.remove(region);
+			}
+
+			final UUID playerUUID = entry.getPlayerUUID();
+
+			if (playerUUID != null) {
+				final NavigableSet<DeathChestIndexEntry> entries = ownerIndex.get(playerUUID);
+
+				if (entries != null && entries.remove(entry) && entries.isEmpty()) {
+					ownerIndex.remove(playerUUID);
+				}
+			}
+
+			shards.markDirty(region);
+			indexDirty = true;
+		}
+	}
+
+	@SuppressWarnings("NullAway")
+	private void addToOwnerIndex(DeathChestIndexEntry entry) {
+		NavigableSet<DeathChestIndexEntry> entries = ownerIndex.get(entry.getPlayerUUID());
+
+		if (entries == null) {
+			entries = new TreeSet<>();
+			ownerIndex.put(entry.getPlayerUUID(), entries);
+		}
+
+		entries.add(entry);
+	}
+
+	private NavigableSet<DeathChestIndexEntry> getOwnerIndex(UUID playerUUID) {
+		if (ownerIndexIncomplete) {
+			//Owners that are missing from older indexes are only known once every region has
+			//been loaded.
+			loadAllRegions();
+			ownerIndexIncomplete = false;
+		}
+
+		final NavigableSet<DeathChestIndexEntry> entries = ownerIndex.get(playerUUID);
+		return entries == null ? Collections.emptyNavigableSet() : entries;
+	}
+
+	private void record(String type, DeathChest deathChest) {
+		if (!journal.isReplaying()) {
+			markDirty();
+
+			if (isJournaling()) {
+				journal.record(type, deathChest);
+			}
+		}
+	}
+
+	private void record(String type, UUID identifier) {
+		if (!journal.isReplaying()) {
+			markDirty();
+
+			if (isJournaling()) {
+				journal.record(type, identifier);
+			}
+		}
+	}
+
+	//Records are only built when the next save can append them to the journal.
+	private boolean isJournaling() {
+		if (VanillaDeathChest.config().storage.mode == VDCConfig.StorageMode.JOURNALED &&
+				!shardedOnDisk) {
+			return true;
+		}
+
+		//The storage mode may have been changed, so the next save must write everything.
+		journal.requireCompaction();
+		return false;
+	}
+
+	//The journal is deleted last because it has been folded into whatever was just written.
+	private void write(
+			File legacyFile, File snapshotFile, DeathChestShards.@Nullable Changes shardChanges,
+			@Nullable DeathChestsSnapshot snapshot
+	) {
+		DeathChestsIO.submit(() -> {
+			try {
+				archive.write();
+
+				if (shardChanges != null) {
+					shardChanges.write();
+				}
+
+				if (snapshot != null) {
+					snapshot.write(snapshotFile);
+					Files.deleteIfExists(legacyFile.toPath());
+				}
+
+				journal.delete();
+			} catch (IOException ex) {
+				VanillaDeathChest.logger.error("Failed to save death chests", ex);
+				saveFailed = true;
+			}
+		});
+	}
+
+	/**
+	 * Returns the world that this state belongs to.
+	 *
+	 * @return a {@link ServerWorld}.
+	 */
+	ServerWorld getWorld() {
+		return world;
+	}
+
+	/**
+	 * Returns the placed death chests that are in memory.
+	 *
+	 * @return an unmodifiable {@link Collection} of death chests.
+	 */
+	Collection<DeathChest> getPlacedDeathChests() {
+		return Collections.unmodifiableCollection(deathChests.values());
+	}
+
+	/**
+	 * Returns whether the specified death chest exists in the world.
+	 *
+	 * @param deathChest a {@link DeathChest}.
+	 * @return {@code true} if the death chest exists, or otherwise {@code false}.
+	 */
+	@SuppressWarnings("PMD.CompareObjectsWithEquals")
+	boolean isExisting(DeathChest deathChest) {
+		return existingDeathChests.get(deathChest.getPos().asLong()) == deathChest;
+	}
+
+	/**
+	 * Returns the death chest index entries.
+	 *
+	 * @return an unmodifiable {@link Collection} of {@link DeathChestIndexEntry} instances.
+	 */
+	Collection<DeathChestIndexEntry> getIndexEntries() {
+		return Collections.unmodifiableCollection(index.values());
+	}
+
+	/**
+	 * Returns the regions that contain placed death chests.
+	 *
+	 * @return an unmodifiable {@link LongSet} of packed region positions.
+	 */
+	LongSet getRegions() {
+		return LongSets.unmodifiable(regionDeathChests.keySet());
+	}
+
+	/**
+	 * Returns whether the specified region contains placed death chests.
+	 *
+	 * @param region a packed region position.
+	 * @return {@code true} if the region contains placed death chests, or otherwise
+	 * {@code false}.
+	 */
+	boolean hasDeathChests(long region) {
+		return regionDeathChests.containsKey(region);
+	}
+
+	/**
+	 * Returns the placed death chests in the specified region that are in memory.
+	 *
+	 * @param region a packed region position.
+	 * @return a {@link List} of death chests.
+	 */
+	List<DeathChest> getRegionDeathChests(long region) {
+		final Set<UUID> identifiers = regionDeathChests.get(region);
+
+		if (identifiers == null) {
+			return Collections.emptyList();
+		}
+
+		final List<DeathChest> regionChests = new ArrayList<>(identifiers.size());
+
+		for (UUID identifier : identifiers) {
+			final DeathChest deathChest = deathChests.get(identifier);
+
+			if (deathChest != null) {
+				regionChests.add(deathChest);
+			}
+		}
+
+		return regionChests;
+	}
+
+	/**
+	 * Loads the death chests in the specified region if they are stored in a region shard.
+	 *
+	 * @param region a packed region position.
+	 */
+	void loadRegion(long region) {
+		if (shardedOnDisk) {
+			shards.load(this, region);
+		}
+	}
+
+	/**
+	 * Loads the death chests in all regions if they are stored in region shards.
+	 */
+	void loadAllRegions() {
+		if (!shardedOnDisk) {
+			return;
+		}
+
+		final LongIterator it = new LongArrayList(regionDeathChests.keySet()).iterator();
+
+		while (it.hasNext()) {
+			shards.load(this, it.nextLong());
+		}
+	}
+
+	/**
+	 * Adds the specified index entry.
+	 *
+	 * @param entry a {@link DeathChestIndexEntry}.
+	 * @return {@code true} if the death chest was not already indexed, or otherwise
+	 * {@code false}.
+	 */
+	boolean index(DeathChestIndexEntry entry) {
+		final UUID identifier = entry.getIdentifier();
+		final DeathChestIndexEntry previous = index.get(identifier);
+
+		if (previous != null) {
+			//Older indexes do not record owners, so they are filled in as death chests are loaded.
+			if (previous.getPlayerUUID() == null && entry.getPlayerUUID() != null) {
+				index.put(identifier, entry);
+				addToOwnerIndex(entry);
+				indexDirty = true;
+			}
+
+			return false;
+		}
+
+		index.put(identifier, entry);
+		Set<UUID> identifiers = regionDeathChests.get(entry.getRegion());
+
+		if (identifiers == null) {
+			identifiers = new HashSet<>();
+			regionDeathChests.put(entry.getRegion(), identifiers);
+		}
+
+		identifiers.add(identifier);
+
+		if (entry.getPlayerUUID() == null) {
+			ownerIndexIncomplete = true;
+		} else {
+			addToOwnerIndex(entry);
+		}
+
+		return true;
+	}
+
+	/**
+	 * Adds a placed death chest that has been read from disk.
+	 * Death chests that no longer exist are archived.
+	 *
+	 * @param deathChest a {@link DeathChest}.
+	 * @param exists whether the death chest exists in the world.
+	 */
+	void readDeathChest(DeathChest deathChest, boolean exists) {
+		//Death chests that are already loaded are never older than those on disk.
+		if (deathChests.putIfAbsent(deathChest.getIdentifier(), deathChest) != null) {
+			return;
+		}
+
+		index(DeathChestIndexEntry.of(deathChest));
+
+		if (exists) {
+			addExistingDeathChest(deathChest);
+		} else {
+			//Older versions keep death chests that no longer exist.
+			archiveDeathChest(deathChest);
+			markDirty();
+		}
+	}
+
+	/**
+	 * Adds a queued death chest that has been read from disk.
+	 *
+	 * @param deathChest a {@link DeathChest}.
+	 */
+	void readQueuedDeathChest(DeathChest deathChest) {
+		queuedDeathChests.add(deathChest);
+	}
+
+	/**
+	 * Removes the queued death chest with the specified identifier without recording the change.
+	 *
+	 * @param identifier a death chest identifier.
+	 */
+	void removeQueuedDeathChest(UUID identifier) {
+		queuedDeathChests.removeIf(queued -> queued.getIdentifier().equals(identifier));
+	}
+
+	/**
+	 * Returns the {@link DeathChestsState} instance for the specified world.
+	 *
+	 * @param world a {@link ServerWorld}.
+	 * @return the {@link DeathChestsState} instance for the specified world.
+	 */
+	public static DeathChestsState get(ServerWorld world) {
+		final PersistentStateManager manager = world.getPersistentStateManager();
+		final PersistentStateManagerAccessor accessor = (PersistentStateManagerAccessor) manager;
+		final PersistentState loadedState = accessor.getLoadedStates().get(ID);
+
+		if (loadedState instanceof DeathChestsState) {
+			return (DeathChestsState) loadedState;
+		}
+
+		final CompletableFuture<DeathChestsState> preload = preloadingStates.remove(world);
+		DeathChestsState state = null;
+
+		if (preload != null) {
+			try {
+				state = preload.join();
+			} catch (CompletionException ex) {
+				VanillaDeathChest.logger.error("Failed to preload death chests", ex);
+			}
+		}
+
+		if (state == null) {
+			state = load(world, accessor.getDirectory());
+		}
+
+		manager.set(state);
+
+		//Chunk events are ignored until the state is loaded.
+		for (ChunkHolder holder : ((ThreadedAnvilChunkStorageAccessor)
+				world.getChunkManager().threadedAnvilChunkStorage).callEntryIterator()) {
+			final WorldChunk chunk = holder.getWorldChunk();
+
+			if (chunk != null) {
+				state.trackChunk(chunk);
+			}
+		}
+
+		return state;
+	}
+
+	@Nullable
+	private static DeathChestsState getIfLoaded(ServerWorld world) {
+		final PersistentState loadedState = ((PersistentStateManagerAccessor)
+				world.getPersistentStateManager()).getLoadedStates().get(ID);
+		return loadedState instanceof DeathChestsState ? (DeathChestsState) loadedState : null;
+	}
+
+	/**
+	 * Called when the VanillaDeathChest configuration is reloaded.
+	 * This reschedules the protection expiry and expiry timers of all existing death chests.
+	 *
+	 * @param server the {@link MinecraftServer}.
+	 */
+	public static void onConfigReload(MinecraftServer server) {
+		for (ServerWorld world : server.getWorlds()) {
+			final DeathChestsState state = getIfLoaded(world);
+
+			//States that are loaded later schedule their timers when they are loaded.
+			if (state == null) {
+				continue;
+			}
+
+			for (DeathChest deathChest : state.existingDeathChests.values()) {
+				rescheduleTimer(
+						state.protectionTimers, state.protectionTimerHandles, deathChest,
+						getProtectionExpiryTime(deathChest)
+				);
+				rescheduleTimer(
+						state.expiryTimers, state.expiryTimerHandles, deathChest,
+						getExpiryTime(deathChest)
+				);
+			}
+		}
+	}
+
+	/**
+	 * Called when a world is loaded.
+	 * If death chests can spawn in the world, its {@link DeathChestsState} is loaded in the
+	 * background.
+	 *
+	 * @param server the {@link MinecraftServer}.
+	 * @param world a {@link ServerWorld}.
+	 */
+	public static void onWorldLoad(MinecraftServer server, ServerWorld world) {
+		if (!VanillaDeathChest.config().spawning.isDimensionEnabled(world)) {
+			return;
+		}
+
+		final File directory =
+				((PersistentStateManagerAccessor) world.getPersistentStateManager()).getDirectory();
+		preloadingStates.put(world, DeathChestsIO.supply(() -> load(world, directory)));
+	}
+
+	/**
+	 * Called when a server has started.
+	 * This waits for all preloaded states to finish loading.
+	 *
+	 * @param server the {@link MinecraftServer}.
+	 */
+	public static void onServerStarted(MinecraftServer server) {
+		for (ServerWorld world : new ArrayList<>(preloadingStates.keySet())) {
+			get(world);
+		}
+	}
+
+	/**
+	 * Called when a server stops.
+	 * This discards any states that were preloaded but never used.
+	 *
+	 * @param server the {@link MinecraftServer}.
+	 */
+	public static void onServerStopped(MinecraftServer server) {
+		preloadingStates.clear();
+	}
+
+	private static DeathChestsState load(ServerWorld world, File directory) {
+		final DeathChestsState state = new DeathChestsState(world, directory);
+		final File snapshotFile = DeathChestsSnapshot.getFile(directory, ID);
+		final File legacyFile = new File(directory, ID + ".dat");
+
+		try {
+			if (snapshotFile.exists()) {
+				final DeathChestsSnapshot snapshot = DeathChestsSnapshot.read(snapshotFile);
+				state.shardedOnDisk = snapshot.isSharded();
+				snapshot.readInto(state);
+			} else if (legacyFile.exists()) {
+				//The legacy NBT file is converted to a snapshot on the next save.
+				state.fromTag(NbtIo.readCompressed(legacyFile).getCompound("data"));
+				state.markDirty();
+			}
+		} catch (IOException ex) {
+			VanillaDeathChest.logger.error("Failed to load death chests", ex);
+		}
+
+		state.journal.replay(state);
+		return state;
+	}
+
+	/**
+	 * Called when a chunk is loaded.
+	 * This loads the death chests in the chunk's region if they are stored in a region shard.
+	 *
+	 * @param world a {@link ServerWorld}.
+	 * @param chunk a {@link WorldChunk}.
+	 */
+	public static void onChunkLoad(ServerWorld world, WorldChunk chunk) {
+		final DeathChestsState state = getIfLoaded(world);
+
+		if (state != null) {
+			state.trackChunk(chunk);
+		}
+	}
+
+	/**
+	 * Called when a chunk is unloaded.
+	 *
+	 * @param world a {@link ServerWorld}.
+	 * @param chunk a {@link WorldChunk}.
+	 */
+	public static void onChunkUnload(ServerWorld world, WorldChunk chunk) {
+		//The block entity unload event is only fired for these when block entities are next
+		//ticked.
+		for (BlockEntity blockEntity : chunk.getBlockEntities().values()) {
+			if (blockEntity instanceof DeathChestBlockEntity) {
+				((DeathChestBlockEntity) blockEntity).markUnloaded();
+			}
+		}
+
+		final DeathChestsState state = getIfLoaded(world);
+
+		if (state == null) {
+			return;
+		}
+
+		final long chunkPos = chunk.getPos().toLong();
+		state.loadedChunks.remove(chunkPos);
+
+		final Set<DeathChest> deathChests = state.chunkDeathChests.get(chunkPos);
+
+		if (deathChests == null) {
+			return;
+		}
+
+		for (DeathChest deathChest : deathChests) {
+			if (isWestHalfInChunk(deathChest, chunkPos)) {
+				state.loadedDeathChests.remove(deathChest);
+				state.changedDeathChests.remove(deathChest);
+				state.expiredDeathChests.remove(deathChest);
+			}
+		}
+	}
+
+	private void trackChunk(WorldChunk chunk) {
+		final long chunkPos = chunk.getPos().toLong();
+		loadedChunks.add(chunkPos);
+		loadRegion(DeathChestShards.getRegion(chunk.getPos()));
+
+		final Set<DeathChest> deathChests = chunkDeathChests.get(chunkPos);
+
+		if (deathChests == null) {
+			return;
+		}
+
+		for (DeathChest deathChest : deathChests) {
+			if (isWestHalfInChunk(deathChest, chunkPos)) {
+				loadedDeathChests.add(deathChest);
+			}
+
+			//The east half of a double chest may only just have been loaded.
+			onContentsChanged(deathChest);
+
+			if (loadedDeathChests.contains(deathChest) &&
+					getExpiryTime(deathChest) <= world.getTime()) {
+				expiredDeathChests.add(deathChest);
+			}
+		}
+	}
+
+	private static boolean isWestHalfInChunk(DeathChest deathChest, long chunkPos) {
+		final BlockPos pos = deathChest.getPos();
+		return ChunkPos.toLong(pos.getX() >> 4, pos.getZ() >> 4) == chunkPos;
+	}
+
+	/**
+	 * Called when a block entity is unloaded.
+	 *
+	 * @param blockEntity a {@link BlockEntity}.
+	 * @param world a {@link ServerWorld}.
+	 */
+	public static void onBlockEntityUnload(BlockEntity blockEntity, ServerWorld world) {
+		if (!(blockEntity instanceof DeathChestBlockEntity)) {
+			return;
+		}
+
+		//Fabric API invokes this event in three different locations, but only two of them are
+		//when a block entity is removed. The other one is just when a chunk is unloaded, in which
+		//case the block entity has been marked in onChunkUnload.
+		final DeathChestBlockEntity deathChestBlockEntity = (DeathChestBlockEntity) blockEntity;
+
+		if (deathChestBlockEntity.isUnloaded()) {
+			return;
+		}
+
+		final DeathChest deathChest = deathChestBlockEntity.getDeathChest();
+
+		if (deathChest != null) {
+			get(world).removeExistingDeathChest(deathChest);
 		}
 	}
 }
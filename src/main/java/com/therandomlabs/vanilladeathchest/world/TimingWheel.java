@@ -0,0 +1,276 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2021 TheRandomLabs
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.therandomlabs.vanilladeathchest.world;
+
+import java.util.function.Consumer;
+
+import org.checkerframework.checker.nullness.qual.Nullable;
+
+/**
+ * A hierarchical timing wheel keyed by world time.
+ * Scheduling, cancelling and firing a timer are all constant-time operations, and advancing the
+ * wheel by one tick only touches the slots that are due, so no per-tick scan over all timers is
+ * necessary.
+ *
+ * @param <T> the type of the values that timers carry.
+ */
+final class TimingWheel<T> {
+	private static final int SLOT_BITS = 6;
+	private static final int SLOTS = 1 << SLOT_BITS;
+	private static final int SLOT_MASK = SLOTS - 1;
+	private static final int LEVELS = 6;
+	//Longer delays are clamped to this, and the timers are rescheduled when they are cascaded.
+	private static final long MAX_DELAY = (1L << (SLOT_BITS * LEVELS)) - 1L;
+
+	//The first timer in each slot of each level, or null if the slot is empty.
+	private final @Nullable Timer<T>[][] slots;
+	//The next world time that has not yet been processed.
+	private long nextTime;
+	private int size;
+
+	/**
+	 * Constructs a {@link TimingWheel} that has processed all times up to and including the
+	 * specified world time.
+	 *
+	 * @param time a world time.
+	 */
+	@SuppressWarnings("unchecked")
+	TimingWheel(long time) {
+		slots = new Timer[LEVELS][SLOTS];
+		nextTime = time + 1L;
+	}
+
+	/**
+	 * Returns the number of scheduled timers.
+	 *
+	 * @return the number of scheduled timers.
+	 */
+	int size() {
+		return size;
+	}
+
+	/**
+	 * Schedules a timer. If the deadline has already been processed, the timer is fired the next
+	 * time this wheel is advanced.
+	 *
+	 * @param deadline the world time at which the timer should be fired.
+	 * @param value the value that the timer should carry.
+	 * @return the scheduled {@link Timer}.
+	 */
+	Timer<T> schedule(long deadline, T value) {
+		final Timer<T> timer = new Timer<>(deadline, value);
+		insert(timer);
+		size++;
+		return timer;
+	}
+
+	/**
+	 * Cancels a timer.
+	 *
+	 * @param timer a {@link Timer} that was scheduled by this wheel.
+	 * @return {@code true} if the timer was still scheduled, or otherwise {@code false}.
+	 */
+	boolean cancel(Timer<T> timer) {
+		if (timer.level == -1) {
+			return false;
+		}
+
+		unlink(timer);
+		size--;
+		return true;
+	}
+
+	/**
+	 * Cancels all timers.
+	 */
+	void clear() {
+		for (int level = 0; level < LEVELS; level++) {
+			for (int slot = 0; slot < SLOTS; slot++) {
+				Timer<T> timer = slots[level][slot];
+				slots[level][slot] = null;
+
+				while (timer != null) {
+					final Timer<T> next = timer.next;
+					timer.level = -1;
+					timer.previous = null;
+					timer.next = null;
+					timer = next;
+				}
+			}
+		}
+
+		size = 0;
+	}
+
+	/**
+	 * Processes all world times up to and including the specified world time, firing each timer
+	 * whose deadline is reached. Timers scheduled by the action are fired no earlier than the
+	 * next world time.
+	 *
+	 * @param time a world time.
+	 * @param action the action to perform for each fired timer.
+	 */
+	void advance(long time, Consumer<Timer<T>> action) {
+		while (nextTime <= time) {
+			final long currentTime = nextTime;
+			final int slot = (int) (currentTime & SLOT_MASK);
+
+			if (slot == 0) {
+				cascade(currentTime);
+			}
+
+			nextTime++;
+
+			if (size == 0) {
+				//Nothing can be due, so we skip straight to the specified time while keeping
+				//the cascade boundaries intact.
+				nextTime = time + 1L;
+				return;
+			}
+
+			Timer<T> timer = slots[0][slot];
+			slots[0][slot] = null;
+
+			while (timer != null) {
+				final Timer<T> next = timer.next;
+				timer.level = -1;
+				timer.previous = null;
+				timer.next = null;
+				size--;
+				action.accept(timer);
+				timer = next;
+			}
+		}
+	}
+
+	//Moves the timers in the slots of the higher levels that are due at the specified time
+	//down to the lower levels.
+	private void cascade(long time) {
+		for (int level = 1; level < LEVELS; level++) {
+			final int slot = (int) ((time >> (SLOT_BITS * level)) & SLOT_MASK);
+			Timer<T> timer = slots[level][slot];
+			slots[level][slot] = null;
+
+			while (timer != null) {
+				final Timer<T> next = timer.next;
+				timer.previous = null;
+				timer.next = null;
+				insert(timer);
+				timer = next;
+			}
+
+			if (slot != 0) {
+				return;
+			}
+		}
+	}
+
+	private void insert(Timer<T> timer) {
+		long deadline = timer.deadline;
+		long delay = deadline - nextTime;
+
+		if (delay < 0L) {
+			deadline = nextTime;
+			delay = 0L;
+		} else if (delay > MAX_DELAY) {
+			deadline = nextTime + MAX_DELAY;
+			delay = MAX_DELAY;
+		}
+
+		int level = 0;
+
+		while (delay >= 1L << (SLOT_BITS * (level + 1))) {
+			level++;
+		}
+
+		final int slot = (int) ((deadline >> (SLOT_BITS * level)) & SLOT_MASK);
+		final Timer<T> head = slots[level][slot];
+
+		timer.level = level;
+		timer.slot = slot;
+		timer.next = head;
+
+		if (head != null) {
+			head.previous = timer;
+		}
+
+		slots[level][slot] = timer;
+	}
+
+	private void unlink(Timer<T> timer) {
+		if (timer.previous == null) {
+			slots[timer.level][timer.slot] = timer.next;
+		} else {
+			timer.previous.next = timer.next;
+		}
+
+		if (timer.next != null) {
+			timer.next.previous = timer.previous;
+		}
+
+		timer.level = -1;
+		timer.previous = null;
+		timer.next = null;
+	}
+
+	/**
+	 * A timer scheduled by a {@link TimingWheel}.
+	 *
+	 * @param <T> the type of the value that this timer carries.
+	 */
+	static final class Timer<T> {
+		private final long deadline;
+		private final T value;
+		//-1 if this timer is not scheduled.
+		private int level = -1;
+		private int slot;
+		@Nullable
+		private Timer<T> previous;
+		@Nullable
+		private Timer<T> next;
+
+		private Timer(long deadline, T value) {
+			this.deadline = deadline;
+			this.value = value;
+		}
+
+		/**
+		 * Returns the world time at which this timer is fired.
+		 *
+		 * @return the world time at which this timer is fired.
+		 */
+		long getDeadline() {
+			return deadline;
+		}
+
+		/**
+		 * Returns the value that this timer carries.
+		 *
+		 * @return the value that this timer carries.
+		 */
+		T getValue() {
+			return value;
+		}
+	}
+}
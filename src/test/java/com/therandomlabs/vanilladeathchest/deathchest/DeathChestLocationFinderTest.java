@@ -0,0 +1,91 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2021 TheRandomLabs
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.therandomlabs.vanilladeathchest.deathchest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import net.minecraft.util.math.BlockPos;
+import org.junit.jupiter.api.Test;
+
+final class DeathChestLocationFinderTest {
+	@Test
+	void searchOrderVisitsEachPositionOnceNearestFirst() {
+		final BlockPos center = new BlockPos(10, 64, -20);
+		final Set<BlockPos> visited = visit(center, 4, 2);
+
+		assertEquals(9 * 5 * 9, visited.size());
+
+		for (BlockPos pos : visited) {
+			assertTrue(Math.abs(pos.getX() - center.getX()) <= 4);
+			assertTrue(Math.abs(pos.getY() - center.getY()) <= 2);
+			assertTrue(Math.abs(pos.getZ() - center.getZ()) <= 4);
+		}
+	}
+
+	@Test
+	void searchOrderCapsVerticalRadius() {
+		final Set<BlockPos> visited = visit(BlockPos.ORIGIN, 1, 5);
+		assertEquals(27, visited.size());
+	}
+
+	@Test
+	void searchOrderStartsAtCenter() {
+		final BlockPos center = new BlockPos(3, 4, 5);
+		final DeathChestLocationFinder.SearchOrder order =
+				new DeathChestLocationFinder.SearchOrder(center, 0, 0);
+		final BlockPos.Mutable pos = new BlockPos.Mutable();
+
+		assertTrue(order.next(pos));
+		assertEquals(center, pos.toImmutable());
+		assertFalse(order.next(pos));
+	}
+
+	//Asserts that positions are visited once each in nearest-first order and returns them.
+	private static Set<BlockPos> visit(BlockPos center, int radius, int radiusY) {
+		final DeathChestLocationFinder.SearchOrder order =
+				new DeathChestLocationFinder.SearchOrder(center, radius, radiusY);
+		final BlockPos.Mutable pos = new BlockPos.Mutable();
+		final Set<BlockPos> visited = new HashSet<>();
+		long previousDistance = 0L;
+
+		while (order.next(pos)) {
+			final BlockPos immutable = pos.toImmutable();
+			assertTrue(visited.add(immutable), () -> "Visited twice: " + immutable);
+
+			final long x = immutable.getX() - center.getX();
+			final long y = immutable.getY() - center.getY();
+			final long z = immutable.getZ() - center.getZ();
+			final long distance = x * x + y * y + z * z;
+			assertTrue(distance >= previousDistance, () -> "Visited out of order: " + immutable);
+			previousDistance = distance;
+		}
+
+		return visited;
+	}
+}
@@ -0,0 +1,103 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2021 TheRandomLabs
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.therandomlabs.vanilladeathchest.deathchest;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.util.UUID;
+
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.ListTag;
+import net.minecraft.nbt.NbtHelper;
+import net.minecraft.util.math.BlockPos;
+import org.junit.jupiter.api.Test;
+
+final class DeathChestTest {
+	@Test
+	void recordRoundTripsHeader() throws IOException {
+		final UUID identifier = UUID.randomUUID();
+		final UUID playerUUID = UUID.randomUUID();
+		final BlockPos pos = new BlockPos(-1234, 70, 56789);
+		final byte[] record =
+				DeathChest.toRecord(createSnapshotTag(identifier, playerUUID, pos, true, false));
+		final DeathChest deathChest = DeathChest.fromRecord(null, record);
+
+		assertEquals(identifier, deathChest.getIdentifier());
+		assertEquals(playerUUID, deathChest.getPlayerUUID());
+		assertEquals(42L, deathChest.getCreationTime());
+		assertEquals(pos, deathChest.getPos());
+		assertTrue(deathChest.isDoubleChest());
+		assertFalse(deathChest.isLocked());
+		assertSame(record, deathChest.getRecord());
+	}
+
+	@Test
+	void recordRoundTripsSnapshotTag() throws IOException {
+		final CompoundTag tag = createSnapshotTag(
+				UUID.randomUUID(), UUID.randomUUID(), new BlockPos(0, 255, -1), false, true
+		);
+		final byte[] record = DeathChest.toRecord(tag);
+		final DeathChest deathChest = DeathChest.fromRecord(null, record);
+
+		assertTrue(deathChest.isLocked());
+		assertFalse(deathChest.isDoubleChest());
+		assertEquals(tag, deathChest.toSnapshotTag());
+		assertArrayEquals(record, DeathChest.toRecord(deathChest.toSnapshotTag()));
+	}
+
+	private static CompoundTag createSnapshotTag(
+			UUID identifier, UUID playerUUID, BlockPos pos, boolean isDoubleChest, boolean locked
+	) {
+		//The items are not decoded by the round trip, so they do not need to be valid.
+		final CompoundTag item = new CompoundTag();
+		item.putString("id", "minecraft:stone");
+		item.putByte("Count", (byte) 3);
+
+		final ListTag items = new ListTag();
+		items.add(item);
+
+		final CompoundTag slot = new CompoundTag();
+		slot.putInt("Slot", 5);
+		slot.putInt("Item", 0);
+
+		final ListTag inventorySlots = new ListTag();
+		inventorySlots.add(slot);
+
+		final CompoundTag tag = new CompoundTag();
+		tag.put("Identifier", NbtHelper.fromUuid(identifier));
+		tag.put("PlayerUUID", NbtHelper.fromUuid(playerUUID));
+		tag.put("Items", items);
+		tag.put("InventorySlots", inventorySlots);
+		tag.putLong("CreationTime", 42L);
+		tag.put("Pos", NbtHelper.fromBlockPos(pos));
+		tag.putBoolean("IsDoubleChest", isDoubleChest);
+		tag.putBoolean("Locked", locked);
+		return tag;
+	}
+}
@@ -0,0 +1,109 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2021 TheRandomLabs
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.therandomlabs.vanilladeathchest.world;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import net.minecraft.nbt.CompoundTag;
+import net.minecraft.nbt.NbtHelper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+final class DeathChestsJournalTest {
+	private static final String ID = "deathchests";
+
+	@Test
+	void savedRecordsAreReplayedInOrder(@TempDir File directory) {
+		final DeathChestsJournal journal = new DeathChestsJournal(directory, ID);
+		final UUID removed = UUID.randomUUID();
+		final UUID dequeued = UUID.randomUUID();
+
+		journal.record(DeathChestsJournal.REMOVE, removed);
+		save(journal, directory);
+		journal.record(DeathChestsJournal.DEQUEUE, dequeued);
+		save(journal, directory);
+
+		final List<CompoundTag> records = replay(directory);
+		assertEquals(2, records.size());
+		assertEquals(DeathChestsJournal.REMOVE, records.get(0).getString("Type"));
+		assertEquals(removed, NbtHelper.toUuid(records.get(0).get("Identifier")));
+		assertEquals(DeathChestsJournal.DEQUEUE, records.get(1).getString("Type"));
+		assertEquals(dequeued, NbtHelper.toUuid(records.get(1).get("Identifier")));
+	}
+
+	@Test
+	void replayedRecordsCountTowardsCompaction(@TempDir File directory) {
+		final DeathChestsJournal journal = new DeathChestsJournal(directory, ID);
+		journal.record(DeathChestsJournal.REMOVE, UUID.randomUUID());
+		journal.record(DeathChestsJournal.REMOVE, UUID.randomUUID());
+		assertFalse(journal.shouldCompact(3));
+		assertTrue(journal.shouldCompact(2));
+		save(journal, directory);
+
+		final DeathChestsJournal replayed = new DeathChestsJournal(directory, ID);
+		replayed.replay(record -> assertTrue(replayed.isReplaying()));
+		assertFalse(replayed.isReplaying());
+		assertFalse(replayed.shouldCompact(3));
+		assertTrue(replayed.shouldCompact(2));
+	}
+
+	@Test
+	void compactionDiscardsJournal(@TempDir File directory) throws IOException {
+		final DeathChestsJournal journal = new DeathChestsJournal(directory, ID);
+		journal.record(DeathChestsJournal.REMOVE, UUID.randomUUID());
+		save(journal, directory);
+
+		journal.requireCompaction();
+		assertTrue(journal.shouldCompact(Integer.MAX_VALUE));
+
+		//A full snapshot has been written, so the journal is reset and deleted.
+		journal.reset();
+		journal.delete();
+		assertFalse(journal.shouldCompact(1));
+		assertFalse(new File(directory, ID + ".journal").exists());
+		assertTrue(replay(directory).isEmpty());
+	}
+
+	private static void save(DeathChestsJournal journal, File directory) {
+		final AtomicBoolean failed = new AtomicBoolean();
+		journal.save(new DeathChestArchive(directory, ID), () -> failed.set(true));
+		DeathChestsIO.flush();
+		assertFalse(failed.get());
+	}
+
+	private static List<CompoundTag> replay(File directory) {
+		final List<CompoundTag> records = new ArrayList<>();
+		new DeathChestsJournal(directory, ID).replay(records::add);
+		return records;
+	}
+}
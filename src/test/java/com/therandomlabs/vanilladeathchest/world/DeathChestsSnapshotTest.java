@@ -0,0 +1,142 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2021 TheRandomLabs
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.therandomlabs.vanilladeathchest.world;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.DeflaterOutputStream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+final class DeathChestsSnapshotTest {
+	private static final int MAGIC = 0x56444353;
+
+	@Test
+	void snapshotRoundTrips(@TempDir File directory) throws IOException {
+		final DeathChestIndexEntry entry = new DeathChestIndexEntry(
+				UUID.randomUUID(), UUID.randomUUID(), 1234L,
+				DeathChestShards.getRegionOfChunk(100, -70)
+		);
+		final DeathChestsSnapshot snapshot = new DeathChestsSnapshot(
+				true, Collections.singletonList(entry),
+				Arrays.asList(
+						new DeathChestsSnapshot.Entry(new byte[] {1, 2, 3}, true),
+						new DeathChestsSnapshot.Entry(new byte[] {4}, false)
+				),
+				Collections.singletonList(new DeathChestsSnapshot.Entry(new byte[] {5, 6}, false))
+		);
+		final File file = DeathChestsSnapshot.getFile(directory, "deathchests");
+		snapshot.write(file);
+
+		final DeathChestsSnapshot read = DeathChestsSnapshot.read(file);
+		assertTrue(read.isSharded());
+		assertIndexEntryEquals(entry, read.getIndex().get(0));
+
+		final List<DeathChestsSnapshot.Entry> deathChests = read.getDeathChests();
+		assertEquals(2, deathChests.size());
+		assertArrayEquals(new byte[] {1, 2, 3}, deathChests.get(0).getRecord());
+		assertTrue(deathChests.get(0).exists());
+		assertArrayEquals(new byte[] {4}, deathChests.get(1).getRecord());
+		assertFalse(deathChests.get(1).exists());
+
+		assertEquals(1, read.getQueuedDeathChests().size());
+		assertArrayEquals(new byte[] {5, 6}, read.getQueuedDeathChests().get(0).getRecord());
+	}
+
+	@Test
+	void version1SnapshotIsMigrated(@TempDir File directory) throws IOException {
+		final UUID identifier = UUID.randomUUID();
+		final long region = DeathChestShards.getRegionOfChunk(-1, 33);
+		final File file = DeathChestsSnapshot.getFile(directory, "deathchests");
+		writeVersion1Snapshot(file, identifier, region);
+
+		final DeathChestsSnapshot read = DeathChestsSnapshot.read(file);
+		final DeathChestIndexEntry entry = read.getIndex().get(0);
+		assertTrue(read.isSharded());
+		assertEquals(identifier, entry.getIdentifier());
+		assertEquals(region, entry.getRegion());
+		//Version 1 indexes do not contain owners, which are filled in as regions are loaded.
+		assertNull(entry.getPlayerUUID());
+		assertEquals(0L, entry.getCreationTime());
+
+		read.write(file);
+		assertEquals(2, readFormatVersion(file));
+		assertIndexEntryEquals(entry, DeathChestsSnapshot.read(file).getIndex().get(0));
+	}
+
+	private static void assertIndexEntryEquals(
+			DeathChestIndexEntry expected, DeathChestIndexEntry actual
+	) {
+		assertEquals(expected.getIdentifier(), actual.getIdentifier());
+		assertEquals(expected.getPlayerUUID(), actual.getPlayerUUID());
+		assertEquals(expected.getCreationTime(), actual.getCreationTime());
+		assertEquals(expected.getRegion(), actual.getRegion());
+	}
+
+	private static void writeVersion1Snapshot(File file, UUID identifier, long region)
+			throws IOException {
+		try (DataOutputStream stream = new DataOutputStream(
+				new BufferedOutputStream(new FileOutputStream(file))
+		)) {
+			stream.writeInt(MAGIC);
+			stream.writeInt(1);
+
+			final DeflaterOutputStream deflaterStream = new DeflaterOutputStream(stream);
+			final DataOutputStream deflated = new DataOutputStream(deflaterStream);
+			deflated.writeInt(2586);
+			deflated.writeBoolean(true);
+			deflated.writeInt(1);
+			deflated.writeLong(identifier.getMostSignificantBits());
+			deflated.writeLong(identifier.getLeastSignificantBits());
+			deflated.writeLong(region);
+			deflated.writeInt(0);
+			deflated.writeInt(0);
+			deflated.flush();
+			deflaterStream.finish();
+		}
+	}
+
+	private static int readFormatVersion(File file) throws IOException {
+		try (DataInputStream stream = new DataInputStream(new FileInputStream(file))) {
+			assertEquals(MAGIC, stream.readInt());
+			return stream.readInt();
+		}
+	}
+}
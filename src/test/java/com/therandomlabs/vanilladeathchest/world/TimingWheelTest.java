@@ -0,0 +1,125 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2021 TheRandomLabs
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy of
+ * this software and associated documentation files (the "Software"), to deal in
+ * the Software without restriction, including without limitation the rights to
+ * use, copy, modify, merge, publish, distribute, sublicense, and/or sell copies of
+ * the Software, and to permit persons to whom the Software is furnished to do so,
+ * subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY, FITNESS
+ * FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR
+ * COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER
+ * IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN
+ * CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+
+package com.therandomlabs.vanilladeathchest.world;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+final class TimingWheelTest {
+	@Test
+	void timersFireAtDeadlinesOnEveryLevel() {
+		final TimingWheel<Long> wheel = new TimingWheel<>(0L);
+		final List<Long> deadlines = Arrays.asList(
+				1L, 2L, 63L, 64L, 65L, 127L, 128L, 4095L, 4096L, 4097L, 262143L, 262144L,
+				262145L, 300000L
+		);
+
+		for (long deadline : deadlines) {
+			wheel.schedule(deadline, deadline);
+		}
+
+		final List<Long> fired = new ArrayList<>();
+
+		for (long time = 1L; time <= 300001L; time++) {
+			final long currentTime = time;
+			wheel.advance(time, timer -> {
+				assertEquals(currentTime, timer.getDeadline());
+				fired.add(timer.getValue());
+			});
+		}
+
+		assertEquals(deadlines, fired);
+		assertEquals(0, wheel.size());
+	}
+
+	@Test
+	void timersScheduledBetweenCascadesFireInOrder() {
+		final Random random = new Random(8L);
+		final TimingWheel<Long> wheel = new TimingWheel<>(100L);
+		final List<Long> fired = new ArrayList<>();
+		long time = 100L;
+		int scheduled = 0;
+
+		while (time < 50000L) {
+			for (int i = random.nextInt(4); i > 0; i--) {
+				final long deadline = time + 1L + random.nextInt(10000);
+				wheel.schedule(deadline, deadline);
+				scheduled++;
+			}
+
+			final long previousTime = time;
+			time += 1L + random.nextInt(300);
+			final long currentTime = time;
+			wheel.advance(time, timer -> {
+				assertTrue(timer.getDeadline() > previousTime);
+				assertTrue(timer.getDeadline() <= currentTime);
+				fired.add(timer.getValue());
+			});
+		}
+
+		wheel.advance(Long.MAX_VALUE - 1L, timer -> fired.add(timer.getValue()));
+
+		assertEquals(scheduled, fired.size());
+
+		for (int i = 1; i < fired.size(); i++) {
+			assertTrue(fired.get(i - 1) <= fired.get(i));
+		}
+	}
+
+	@Test
+	void cancelledTimersDoNotFire() {
+		final TimingWheel<String> wheel = new TimingWheel<>(0L);
+		wheel.schedule(70L, "kept");
+		final TimingWheel.Timer<String> cancelled = wheel.schedule(5000L, "cancelled");
+
+		assertTrue(wheel.cancel(cancelled));
+		assertFalse(wheel.cancel(cancelled));
+		assertEquals(1, wheel.size());
+
+		final List<String> fired = new ArrayList<>();
+		wheel.advance(6000L, timer -> fired.add(timer.getValue()));
+
+		assertEquals(Arrays.asList("kept"), fired);
+		assertEquals(0, wheel.size());
+	}
+
+	@Test
+	void overdueTimersFireOnNextAdvance() {
+		final TimingWheel<String> wheel = new TimingWheel<>(100L);
+		wheel.schedule(50L, "overdue");
+
+		final List<String> fired = new ArrayList<>();
+		wheel.advance(101L, timer -> fired.add(timer.getValue()));
+
+		assertEquals(Arrays.asList("overdue"), fired);
+	}
+}